@@ -1,6 +1,9 @@
 package com.piketec.jenkins.plugins.tpt;
 
+import javax.annotation.CheckForNull;
+
 import com.piketec.jenkins.plugins.tpt.Configuration.JenkinsConfiguration;
+import com.piketec.jenkins.plugins.tpt.publisher.TPTReportModel;
 
 import hudson.model.InvisibleAction;
 
@@ -21,6 +24,9 @@ public class InvisibleActionTPTExecution extends InvisibleAction {
 
   private final String reportDir;
 
+  // only kept in memory, after a restart the publisher parses the test data itself
+  private transient TPTReportModel reportModel;
+
   /**
    * @param cfg
    *          A {@link JenkinsConfiguration} with all variables expanded
@@ -68,4 +74,22 @@ public class InvisibleActionTPTExecution extends InvisibleAction {
     return reportDir;
   }
 
+  /**
+   * @return the TPT report content that was collected while the JUnit results were created, or
+   *         <code>null</code> if not available
+   */
+  @CheckForNull
+  public TPTReportModel getReportModel() {
+    return reportModel;
+  }
+
+  /**
+   * @param reportModel
+   *          the TPT report content that was collected while the JUnit results were created.
+   *          <code>null</code> to release it once the report is published.
+   */
+  public void setReportModel(@CheckForNull TPTReportModel reportModel) {
+    this.reportModel = reportModel;
+  }
+
 }
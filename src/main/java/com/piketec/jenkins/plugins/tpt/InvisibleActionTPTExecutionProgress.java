@@ -0,0 +1,129 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2018 Synopsys Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.piketec.jenkins.plugins.tpt;
+
+import com.piketec.jenkins.plugins.tpt.api.callables.ExecutionProgressListener;
+
+import hudson.model.InvisibleAction;
+
+/**
+ * Shows the progress of the TPT execution of a worker job on its build page. The agent reports the
+ * progress via {@link ExecutionProgressListener} while the test cases are executed. If the worker
+ * job executes several batches of test cases the progress of all batches is summed up. A retry of
+ * a batch replaces the progress of the failed try.
+ */
+public class InvisibleActionTPTExecutionProgress extends InvisibleAction
+    implements ExecutionProgressListener {
+
+  private final String tptFile;
+
+  private final String configuration;
+
+  private int executedBefore;
+
+  private int totalBefore;
+
+  // test cases of the current batch that produced results in an earlier try and are not retried
+  private int finishedBeforeRetry;
+
+  private int executed;
+
+  private int total;
+
+  /**
+   * @param tptFile
+   *          the TPT file that is executed
+   * @param configuration
+   *          the execution configuration that is executed
+   */
+  public InvisibleActionTPTExecutionProgress(String tptFile, String configuration) {
+    this.tptFile = tptFile;
+    this.configuration = configuration;
+  }
+
+  /**
+   * @return the tptFile
+   */
+  public String getTptFile() {
+    return tptFile;
+  }
+
+  /**
+   * @return the configuration
+   */
+  public String getConfiguration() {
+    return configuration;
+  }
+
+  /**
+   * @return the number of executed test cases of all executions of the worker job
+   */
+  public synchronized int getExecuted() {
+    return executedBefore + executed;
+  }
+
+  /**
+   * @return the number of test cases of all executions of the worker job that are started so far
+   */
+  public synchronized int getTotal() {
+    return totalBefore + total;
+  }
+
+  /**
+   * @return the progress in percent
+   */
+  public synchronized int getPercentage() {
+    int all = getTotal();
+    return all <= 0 ? 0 : (int)(100L * getExecuted() / all);
+  }
+
+  /**
+   * Has to be called before the execution of the next batch of test cases starts, so the progress
+   * of the finished batches is kept.
+   */
+  synchronized void startBatch() {
+    executedBefore += executed;
+    totalBefore += total;
+    finishedBeforeRetry = 0;
+    executed = 0;
+    total = 0;
+  }
+
+  /**
+   * Has to be called before a failed execution of the current batch is retried. The progress of
+   * the retry replaces the progress of the failed try.
+   * 
+   * @param finished
+   *          the number of test cases of the batch that produced results and are not retried
+   */
+  synchronized void startRetry(int finished) {
+    finishedBeforeRetry = finished;
+    executed = finished;
+    total = finished;
+  }
+
+  @Override
+  public synchronized void progress(int executed, int total) {
+    this.executed = finishedBeforeRetry + executed;
+    this.total = finishedBeforeRetry + total;
+  }
+
+}
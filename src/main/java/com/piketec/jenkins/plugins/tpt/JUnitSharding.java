@@ -0,0 +1,45 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2018 Synopsys Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.piketec.jenkins.plugins.tpt;
+
+/**
+ * How the JUnit results of one configuration are split into files. Several small files can be
+ * written in parallel and are easier to handle for the JUnit plugin than one huge file.
+ */
+public enum JUnitSharding {
+
+  /**
+   * One file per configuration: &lt;id&gt;.xml
+   */
+  NONE,
+
+  /**
+   * One file per platform, i.e. per execution configuration item:
+   * &lt;id&gt;.part-&lt;platform&gt;.xml
+   */
+  PER_PLATFORM,
+
+  /**
+   * Files with a fixed maximal number of test cases: &lt;id&gt;.part-&lt;n&gt;.xml
+   */
+  PER_TEST_CASE_COUNT;
+
+}
@@ -20,11 +20,28 @@
  */
 package com.piketec.jenkins.plugins.tpt;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
+import javax.annotation.CheckForNull;
 import javax.xml.stream.FactoryConfigurationError;
 import javax.xml.stream.XMLStreamException;
 
@@ -33,8 +50,13 @@ import org.apache.commons.io.FilenameUtils;
 import com.piketec.jenkins.plugins.tpt.TptLog.LogEntry;
 import com.piketec.jenkins.plugins.tpt.TptLog.LogLevel;
 import com.piketec.jenkins.plugins.tpt.Configuration.JenkinsConfiguration;
+import com.piketec.jenkins.plugins.tpt.publisher.TPTReportModel;
 
 import hudson.FilePath;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.util.SystemProperties;
 
 /**
  * Class for helper methods to collect and tranform TPT test result.
@@ -43,6 +65,22 @@ import hudson.FilePath;
  */
 public final class Publish {
 
+  /**
+   * Separates the name of the configuration and the name of the shard in sharded JUnit files
+   */
+  private static final String JUNIT_SHARD_INFIX = ".part-";
+
+  /**
+   * The shard name of the test cases without platform if sharded per platform
+   */
+  private static final String DEFAULT_PLATFORM_SHARD = "default";
+
+  /**
+   * The maximal number of log message characters that are kept per test case while parsing
+   */
+  static final int MAX_LOG_CHARACTERS_PER_TEST_CASE = SystemProperties
+      .getInteger(Publish.class.getName() + ".maxLogCharactersPerTestCase", 1000000);
+
   /**
    * Publish the Junits results, it creates an XML file and write the results on it.
    * 
@@ -66,51 +104,135 @@ public final class Publish {
                                         FilePath jUnitOutputDir, TptLogger logger,
                                         LogLevel logLevel)
       throws IOException, InterruptedException {
-    XmlStreamWriter xmlPub = null;
-
-    try {
-      String tptFileName = FilenameUtils.getBaseName(jenkinsConfig.getTptFile());
-      FilePath jUnitXMLFile =
-          new FilePath(jUnitOutputDir, jenkinsConfig.getId().replace(" ", "_") + ".xml");
-      xmlPub = new XmlStreamWriter();
-      xmlPub.initalize(jUnitXMLFile);
-      xmlPub.writeTestsuite(tptFileName);
-      logger.info("Collecting test cases");
-      TestCasesParseResult testdata = getTestcases(testDataDir, logger);
-      logger.info("Found " + testdata.testCases.size() + " test results.");
-      for (Testcase tc : testdata.testCases) {
-        if (tc.getLogEntries(LogLevel.ERROR).isEmpty() && TptResult.PASSED.equals(tc.getResult())) {
-          xmlPub.writeTestcase(tptFileName, tc);
-        } else {
-          StringBuilder log = new StringBuilder();
-          log.append(tc.getResult().name());
-          for (LogEntry entry : tc.getLogEntries(logLevel)) {
-            log.append('\n');
-            log.append('[').append(entry.level.name()).append("] ").append(entry.message);
-          }
-          xmlPub.writeTestcaseError(tptFileName, tc, log.toString());
-        }
+    return publishJUnitResults(jenkinsConfig, testDataDir, jUnitOutputDir, logger, logLevel,
+        JUnitSharding.NONE, 0);
+  }
+
+  /**
+   * Publish the Junits results, it creates one or several XML files and write the results on
+   * them. Several files are written in parallel.
+   * 
+   * @param jenkinsConfig
+   *          The configuration to which the TPT test resuklt should be tranformed to JUnit
+   * @param testDataDir
+   *          The directory where TPT test data should be searched
+   * @param jUnitOutputDir
+   *          The directory where the transformed results should be written to.
+   * @param logger
+   *          to display the information
+   * @param logLevel
+   *          the threshold for the severity of the log messages
+   * @param sharding
+   *          How the test cases are split into several files
+   * @param testCasesPerFile
+   *          The maximal number of test cases per file for
+   *          {@link JUnitSharding#PER_TEST_CASE_COUNT}
+   * @return the number of testcases .
+   * @throws IOException
+   *           if an error occured while parsing TPT test data or writing the JUnit xml files
+   * @throws InterruptedException
+   *           If the job was interrupted
+   */
+  public static int publishJUnitResults(JenkinsConfiguration jenkinsConfig, FilePath testDataDir,
+                                        FilePath jUnitOutputDir, TptLogger logger,
+                                        LogLevel logLevel, JUnitSharding sharding,
+                                        int testCasesPerFile)
+      throws IOException, InterruptedException {
+    return publishJUnitResults(jenkinsConfig, testDataDir, jUnitOutputDir, logger, logLevel,
+        sharding, testCasesPerFile, null).getTestCaseCount();
+  }
+
+  /**
+   * Publish the Junits results like
+   * {@link #publishJUnitResults(JenkinsConfiguration, FilePath, FilePath, TptLogger, LogLevel,
+   * JUnitSharding, int)}. Additionally fills the given TPT report model in the same pass over the
+   * test data, so the report publisher does not need to parse the test data again.
+   * 
+   * @param reportModel
+   *          The report model to fill, may be <code>null</code>
+   * @return the number of test cases and the filled report model
+   */
+  static JUnitXmlResult publishJUnitResults(JenkinsConfiguration jenkinsConfig,
+                                            FilePath testDataDir, FilePath jUnitOutputDir,
+                                            TptLogger logger, LogLevel logLevel,
+                                            JUnitSharding sharding, int testCasesPerFile,
+                                            @CheckForNull TPTReportModel reportModel)
+      throws IOException, InterruptedException {
+    String tptFileName = FilenameUtils.getBaseName(jenkinsConfig.getTptFile());
+    String baseName = jenkinsConfig.getId().replace(" ", "_");
+    logger.info("Collecting test cases");
+    // parse and write on the agent, only the number of test cases and the errors are sent back
+    JUnitXmlResult result = jUnitOutputDir.act(new WriteJUnitXmlCallable(tptFileName, baseName,
+        testDataDir, logLevel, sharding, testCasesPerFile, reportModel));
+    for (String error : result.errors) {
+      logger.error(error);
+    }
+    logger.info("Found " + result.testCaseCount + " test results.");
+    if (result.fileCount > 1) {
+      logger.info("Wrote " + result.fileCount + " JUnit XML files.");
+    }
+    if (result.reportModel != null) {
+      for (String error : result.reportModel.getErrors()) {
+        logger.error(error);
       }
-      if (testdata.virtualGlobalAssessletTestCase != null) {
-        if (testdata.virtualGlobalAssessletTestCase.getResult() == TptResult.PASSED) {
-          xmlPub.writeTestcase(tptFileName, testdata.virtualGlobalAssessletTestCase);
-        } else {
-          xmlPub.writeTestcaseError(tptFileName, testdata.virtualGlobalAssessletTestCase,
-              testdata.virtualGlobalAssessletTestCase.getResult().name());
+    }
+    return result;
+  }
+
+  /**
+   * Writes the given test cases as JUnit test cases.
+   */
+  private static void writeTestcases(XmlStreamWriter xmlPub, String tptFileName,
+                                     List<Testcase> testCases, LogLevel logLevel)
+      throws XMLStreamException {
+    for (Testcase tc : testCases) {
+      if (tc.getLogEntries(LogLevel.ERROR).isEmpty() && TptResult.PASSED.equals(tc.getResult())) {
+        xmlPub.writeTestcase(tptFileName, tc);
+      } else {
+        // the virtual global assesslet test case has no log entries, so it only gets the result
+        StringBuilder log = new StringBuilder();
+        log.append(tc.getResult().name());
+        for (LogEntry entry : tc.getLogEntries(logLevel)) {
+          log.append('\n');
+          log.append('[').append(entry.level.name()).append("] ").append(entry.message);
         }
-      }
-      return testdata.testCases.size();
-    } catch (XMLStreamException e) {
-      throw new IOException("XML stream error: " + e.getMessage());
-    } catch (FactoryConfigurationError e) {
-      throw new IOException("XML configuration error: " + e.getMessage());
-    } finally {
-      if (xmlPub != null) {
-        xmlPub.close();
+        xmlPub.writeTestcaseError(tptFileName, tc, log.toString());
       }
     }
   }
 
+  /**
+   * Splits the test cases into the contents of the JUnit files. Key is the name of the file.
+   */
+  private static Map<String, List<Testcase>> shard(String baseName, List<Testcase> testCases,
+                                                   JUnitSharding sharding, int testCasesPerFile) {
+    Map<String, List<Testcase>> shards = new LinkedHashMap<>();
+    switch (sharding) {
+      case PER_PLATFORM:
+        for (Testcase tc : testCases) {
+          String platform = tc.getPlatformName();
+          platform = Utils.toValidWindowsFileName(
+              Util.fixEmptyAndTrim(platform) == null ? DEFAULT_PLATFORM_SHARD : platform);
+          shards.computeIfAbsent(baseName + JUNIT_SHARD_INFIX + platform + ".xml",
+              k -> new ArrayList<>()).add(tc);
+        }
+        break;
+      case PER_TEST_CASE_COUNT:
+        int size = Math.max(1, testCasesPerFile);
+        for (int i = 0; i < testCases.size(); i += size) {
+          shards.put(baseName + JUNIT_SHARD_INFIX + (i / size + 1) + ".xml",
+              testCases.subList(i, Math.min(i + size, testCases.size())));
+        }
+        break;
+      default:
+        break;
+    }
+    if (shards.isEmpty()) {
+      shards.put(baseName + ".xml", testCases);
+    }
+    return shards;
+  }
+
   // -------------------------------------------------------------------------------------------------------------
 
   /**
@@ -130,35 +252,49 @@ public final class Publish {
    */
   public static TestCasesParseResult getTestcases(FilePath testDataDir, TptLogger logger)
       throws IOException, InterruptedException {
-    Collection<FilePath> files = new HashSet<>();
-    find(testDataDir, "testcase_information.xml", files);
     FilePath xmlFile = new FilePath(testDataDir, "test_summary.xml");
     if (!xmlFile.exists()) {
       logger.error("No \"test_summary.xml\" found.");
     }
-    TestCasesParseResult testSummaryTestcases = TestcaseSummaryParser.parseXml(xmlFile);
-    // Wenn es kein testcase_information.xml gibt bedeutet nicht, dass es keine Tests gibt. (Es
-    // ist wegen den GenerateOverviewReport bug)
-    // Es muss dann trotzdem eine test_summary.xml geben bei der testDataDir
-    if (files.size() > 0) {
-      // we use the testcase_information.xml files, if available. But we need to add the global
-      // assesslet result from test summary xml.
-      testSummaryTestcases.testCases.clear();
-      for (FilePath f : files) {
-        try {
-          Testcase tc = TestcaseParser.parseXml(f);
-          testSummaryTestcases.testCases.add(tc);
-        } catch (IOException e) {
-          logger.error("File \"" + f + "\": " + e.getMessage() + "\n\r");
-        }
-      }
+    TestCasesParseResult testSummaryTestcases = testDataDir.act(
+        new ParseTestCasesCallable(true, LogLevel.ALL, MAX_LOG_CHARACTERS_PER_TEST_CASE, null));
+    for (String error : testSummaryTestcases.errors) {
+      logger.error(error);
     }
     return testSummaryTestcases;
   }
 
+  /**
+   * Collects recursively all test cases by searching for "testcase_information.xml" files in
+   * "rootdir". The "test_summary.xml" is ignored. If a file could not be loaded, a warning will be
+   * printed.
+   * 
+   * @param testDataDir
+   *          The directory where TPT test data should be searched
+   * @param logger
+   *          to display the information
+   * @return The list of parsed TPT test cases
+   * 
+   * @throws IOException
+   *           If the directory could not be searched
+   * @throws InterruptedException
+   *           If the job was interrupted
+   */
+  public static List<Testcase> getTestcaseInformation(FilePath testDataDir, TptLogger logger)
+      throws IOException, InterruptedException {
+    // the log is not needed here
+    TestCasesParseResult result =
+        testDataDir.act(new ParseTestCasesCallable(false, LogLevel.NONE, 0, null));
+    for (String error : result.errors) {
+      logger.warn(error);
+    }
+    return result.testCases;
+  }
+
   /**
    * find all files in directory "root" with file name "pattern" and stores them in collection
-   * "files"
+   * "files". The directory tree is walked on the machine the directory is located on, so only one
+   * remote call is needed.
    * 
    * @param rootdir
    *          The directory that should be searched
@@ -174,16 +310,285 @@ public final class Publish {
    */
   public static void find(FilePath rootdir, String pattern, Collection<FilePath> files)
       throws IOException, InterruptedException {
-    if (rootdir.isDirectory()) {
-      List<FilePath> children = rootdir.list();
-      if (children != null) {
-        for (FilePath child : children) {
-          find(child, pattern, files);
+    for (String path : rootdir.act(new FindFilesCallable(pattern))) {
+      files.add(new FilePath(rootdir.getChannel(), path));
+    }
+  }
+
+  /**
+   * Walks a directory tree on the agent and returns the absolute paths of all files with the given
+   * name (case insensitive).
+   */
+  private static final class FindFilesCallable extends MasterToSlaveFileCallable<List<String>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String pattern;
+
+    FindFilesCallable(String pattern) {
+      this.pattern = pattern;
+    }
+
+    @Override
+    public List<String> invoke(File rootdir, VirtualChannel channel) throws IOException {
+      return findFiles(rootdir, pattern);
+    }
+  }
+
+  /**
+   * Parses all "testcase_information.xml" files below a directory on the agent. The files are
+   * parsed in parallel and only the parsed test cases are sent back to the controller.
+   */
+  static final class ParseTestCasesCallable
+      extends MasterToSlaveFileCallable<TestCasesParseResult> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean withTestSummary;
+
+    private final LogLevel retainedLogLevel;
+
+    private final int maxLogCharacters;
+
+    @CheckForNull
+    private final TPTReportModel reportModel;
+
+    /**
+     * @param withTestSummary
+     *          If <code>true</code> the "test_summary.xml" in the directory is parsed, too. It
+     *          delivers the global assesslet result and the test cases if no
+     *          "testcase_information.xml" exists.
+     * @param retainedLogLevel
+     *          The lowest severity of log entries that are kept
+     * @param maxLogCharacters
+     *          The maximal number of log message characters that are kept per test case
+     * @param reportModel
+     *          If not <code>null</code> this TPT report model is filled in the same pass over the
+     *          "test_summary.xml" and returned with the result
+     */
+    ParseTestCasesCallable(boolean withTestSummary, LogLevel retainedLogLevel,
+                           int maxLogCharacters, @CheckForNull TPTReportModel reportModel) {
+      this.withTestSummary = withTestSummary;
+      this.retainedLogLevel = retainedLogLevel;
+      this.maxLogCharacters = maxLogCharacters;
+      this.reportModel = reportModel;
+    }
+
+    @Override
+    public TestCasesParseResult invoke(File testDataDir, VirtualChannel channel)
+        throws IOException, InterruptedException {
+      List<String> files = findFiles(testDataDir, "testcase_information.xml");
+      TestCasesParseResult result;
+      if (withTestSummary) {
+        FilePath summary = new FilePath(new File(testDataDir, "test_summary.xml"));
+        if (reportModel == null) {
+          result = TestcaseSummaryParser.parseXml(summary);
+        } else {
+          result = TestcaseSummaryParser.parseXml(summary,
+              reportModel.createHandler(!files.isEmpty()));
+          result.reportModel = reportModel;
+        }
+      } else {
+        result = new TestCasesParseResult(new ArrayList<>(), null);
+      }
+      // Wenn es kein testcase_information.xml gibt bedeutet nicht, dass es keine Tests gibt. (Es
+      // ist wegen den GenerateOverviewReport bug)
+      // Es muss dann trotzdem eine test_summary.xml geben bei der testDataDir
+      if (files.isEmpty()) {
+        return result;
+      }
+      // we use the testcase_information.xml files, if available. But we need to add the global
+      // assesslet result from test summary xml.
+      Collections.sort(files);
+      List<String> errors = Collections.synchronizedList(new ArrayList<>());
+      AtomicBoolean interrupted = new AtomicBoolean(false);
+      List<Testcase> testCases = files.parallelStream().<Testcase> map(f -> {
+        if (interrupted.get()) {
+          return null;
+        }
+        try {
+          return TestcaseParser.parseXml(new FilePath(new File(f)), retainedLogLevel,
+              maxLogCharacters);
+        } catch (IOException e) {
+          errors.add("File \"" + f + "\": " + e.getMessage() + "\n\r");
+        } catch (InterruptedException e) {
+          interrupted.set(true);
+        }
+        return null;
+      }).filter(Objects::nonNull).collect(Collectors.toList());
+      if (interrupted.get() || Thread.interrupted()) {
+        throw new InterruptedException("Parsing of test results was interrupted");
+      }
+      result.testCases.clear();
+      result.testCases.addAll(testCases);
+      result.errors.addAll(errors);
+      return result;
+    }
+  }
+
+  /**
+   * Parses the TPT test data and writes the JUnit XML files on the agent the files are located on.
+   * The files are written in parallel in the high throughput mode of {@link XmlStreamWriter}.
+   */
+  private static final class WriteJUnitXmlCallable
+      extends MasterToSlaveFileCallable<JUnitXmlResult> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String tptFileName;
+
+    private final String baseName;
+
+    private final FilePath testDataDir;
+
+    private final LogLevel logLevel;
+
+    private final JUnitSharding sharding;
+
+    private final int testCasesPerFile;
+
+    @CheckForNull
+    private final TPTReportModel reportModel;
+
+    // read on the controller, the system property of the agent does not matter
+    private final int maxLogCharacters = MAX_LOG_CHARACTERS_PER_TEST_CASE;
+
+    WriteJUnitXmlCallable(String tptFileName, String baseName, FilePath testDataDir,
+                          LogLevel logLevel, JUnitSharding sharding, int testCasesPerFile,
+                          @CheckForNull TPTReportModel reportModel) {
+      this.tptFileName = tptFileName;
+      this.baseName = baseName;
+      this.testDataDir = testDataDir;
+      this.logLevel = logLevel;
+      this.sharding = sharding;
+      this.testCasesPerFile = testCasesPerFile;
+      this.reportModel = reportModel;
+    }
+
+    @Override
+    public JUnitXmlResult invoke(File jUnitOutputDir, VirtualChannel channel)
+        throws IOException, InterruptedException {
+      JUnitXmlResult result = new JUnitXmlResult();
+      if (!new FilePath(testDataDir, "test_summary.xml").exists()) {
+        result.errors.add("No \"test_summary.xml\" found.");
+      }
+      // errors are always needed to decide if a test case failed
+      LogLevel retainedLogLevel =
+          logLevel.ordinal() < LogLevel.ERROR.ordinal() ? LogLevel.ERROR : logLevel;
+      TestCasesParseResult testdata = testDataDir.act(
+          new ParseTestCasesCallable(true, retainedLogLevel, maxLogCharacters, reportModel));
+      result.errors.addAll(testdata.errors);
+      List<Testcase> testCases = new ArrayList<>(testdata.testCases);
+      if (testdata.virtualGlobalAssessletTestCase != null) {
+        testCases.add(testdata.virtualGlobalAssessletTestCase);
+      }
+      deleteOldFiles(jUnitOutputDir);
+      Map<String, List<Testcase>> shards = shard(baseName, testCases, sharding, testCasesPerFile);
+      try {
+        shards.entrySet().parallelStream().forEach(shard -> {
+          try {
+            write(new File(jUnitOutputDir, shard.getKey()), shard.getValue());
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      result.testCaseCount = testdata.testCases.size();
+      result.fileCount = shards.size();
+      result.reportModel = testdata.reportModel;
+      return result;
+    }
+
+    /**
+     * Deletes the files of a previous run, they might be sharded differently.
+     */
+    private void deleteOldFiles(File jUnitOutputDir) throws IOException {
+      File[] oldFiles = jUnitOutputDir.listFiles((dir, name) -> name.equals(baseName + ".xml")
+          || (name.startsWith(baseName + JUNIT_SHARD_INFIX) && name.endsWith(".xml")));
+      if (oldFiles != null) {
+        for (File oldFile : oldFiles) {
+          Files.deleteIfExists(oldFile.toPath());
         }
       }
-    } else if (rootdir.exists() && (!rootdir.isDirectory())
-        && rootdir.getName().equalsIgnoreCase(pattern)) {
-      files.add(rootdir);
     }
+
+    private void write(File jUnitXmlFile, List<Testcase> testCases) throws IOException {
+      // the output is only flushed on close, so a failing close fails the whole shard
+      try (XmlStreamWriter xmlPub = new XmlStreamWriter(true)) {
+        xmlPub.initalize(new FilePath(jUnitXmlFile));
+        xmlPub.writeTestsuite(tptFileName);
+        writeTestcases(xmlPub, tptFileName, testCases, logLevel);
+      } catch (XMLStreamException e) {
+        throw new IOException("XML stream error: " + e.getMessage());
+      } catch (FactoryConfigurationError e) {
+        throw new IOException("XML configuration error: " + e.getMessage());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Writing of " + jUnitXmlFile + " was interrupted");
+      }
+    }
+  }
+
+  /**
+   * The outcome of {@link WriteJUnitXmlCallable}
+   */
+  static final class JUnitXmlResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private int testCaseCount;
+
+    private int fileCount;
+
+    private final List<String> errors = new ArrayList<>();
+
+    @CheckForNull
+    private TPTReportModel reportModel;
+
+    /**
+     * @return the number of test cases
+     */
+    int getTestCaseCount() {
+      return testCaseCount;
+    }
+
+    /**
+     * @return the filled TPT report model if one was requested
+     */
+    @CheckForNull
+    TPTReportModel getReportModel() {
+      return reportModel;
+    }
+  }
+
+  /**
+   * Walks a directory tree and returns the absolute paths of all files with the given name (case
+   * insensitive). Must be called on the machine the directory is located on.
+   */
+  private static List<String> findFiles(File rootdir, String pattern) throws IOException {
+    List<String> result = new ArrayList<>();
+    if (!rootdir.exists()) {
+      return result;
+    }
+    Files.walkFileTree(rootdir.toPath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+        Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (attrs.isRegularFile() && file.getFileName().toString().equalsIgnoreCase(pattern)) {
+              result.add(file.toString());
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException exc) {
+            // unreadable file or link cycle, just skip it
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    return result;
   }
 }
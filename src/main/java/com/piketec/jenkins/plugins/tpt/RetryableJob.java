@@ -24,8 +24,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -44,20 +47,35 @@ import hudson.model.StringParameterValue;
 import hudson.model.TaskListener;
 import hudson.model.Cause.UpstreamCause;
 import jenkins.model.ParameterizedJobMixIn;
+import jenkins.util.Timer;
 
+/**
+ * Schedules a build of a worker job and reschedules it if it fails until the configured number of
+ * tries is reached. No thread is blocked while the worker job is queued or running: the scheduling
+ * and the checks for completion are short tasks on the shared Jenkins {@link Timer}, so a
+ * distributing job needs no additional threads regardless of the number of worker jobs.
+ */
 class RetryableJob {
 
-  private Job workerJob;
+  private static final long POLL_INTERVAL_MS = 1000;
 
-  private int tries;
+  private Job workerJob;
 
-  private Thread runner;
+  private volatile int tries;
 
   private TptLogger logger;
 
-  private InterruptedException interruptedException = null;
+  private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+  private volatile Future<Run> scheduled = null;
 
-  private Run lastRun = null;
+  private volatile InterruptedException interruptedException = null;
+
+  private volatile Run lastRun = null;
+
+  private Run< ? , ? > build;
+
+  private TaskListener listener;
 
   /**
    * @param tries
@@ -78,7 +96,8 @@ class RetryableJob {
   }
 
   /**
-   * Schedules the builds triggered by the distributingJobRun by calling schedule()
+   * Schedules the builds triggered by the distributingJobRun by calling schedule(). The method
+   * returns immediately, use {@link #join()} to wait for the completion.
    * 
    * @see schedule
    * 
@@ -89,89 +108,135 @@ class RetryableJob {
    *          to get the environment and for scheduling the build.
    */
   void perform(final Run< ? , ? > build, final TaskListener listener) {
-    runner = new Thread(new Runnable() {
-
-      @Override
-      public void run() {
-        boolean success = false;
-        while (tries > 0 && !success) {
-          List<Future<Run>> futures = new ArrayList<>();
-          try {
-            if (build instanceof AbstractBuild< ? , ? >) {
-              EnvVars env = build.getEnvironment(listener);
-              env.overrideAll(((AbstractBuild< ? , ? >)build).getBuildVariables());
-            }
-            // To be able to enqueue the same build multiple times, they have to be made
-            // artificially different. We do that by adding a UUID. Everything else did not work.
-            ArrayList<Action> parameterActions = new ArrayList<>();
-            ArrayList<ParameterValue> parameterValues = new ArrayList<>();
-            parameterValues.add(new StringParameterValue(UUID.randomUUID().toString(),
-                UUID.randomUUID().toString()));
-            parameterActions.add(new ParametersAction(parameterValues));
-
-            final Future<Run> scheduled = schedule(build, workerJob,
-                ((ParameterizedJobMixIn.ParameterizedJob)workerJob).getQuietPeriod(),
-                parameterActions);
-            if (scheduled != null) {
-              futures.add(scheduled);
-            }
-
-            for (Future<Run> future : futures) {
-              Run run = future.get();
-              lastRun = run;
-              // retry if cancled or failed
-              Result result = run.getResult();
-              if (result != null) {
-                success = result.isBetterOrEqualTo(Result.UNSTABLE);
-              } else {
-                assert false : "Build should not be running since we used future.get()";
-                success = true;
-              }
-              if (future.isCancelled()) {
-                logger.error("Execution of test worker job was canceled.");
-                tries = 0;
-              }
-            }
-          } catch (InterruptedException e) {
-            interruptedException = e;
-            tries = 0;
-            for (Future<Run> future : futures) {
-              future.cancel(true);
-            }
-          } catch (IOException e) {
-            logger.error(e.getMessage());
-            // retry
-          } catch (ExecutionException e) {
-            logger.error(e.getMessage());
-            // retry
-          }
-          tries--;
-          if (!success && tries > 0) {
-            logger.info(
-                "Job execution failed. Scheduling job for retry. It is possible that two test cases"
-                    + " have the same name, if so please make the test cases names unique.");
-          }
-        }
+    this.build = build;
+    this.listener = listener;
+    Timer.get().submit(this::scheduleTry);
+  }
+
+  /**
+   * Schedules one try of the worker job and starts polling for its completion.
+   */
+  private void scheduleTry() {
+    if (completion.isDone()) {
+      return;
+    }
+    try {
+      if (build instanceof AbstractBuild< ? , ? >) {
+        EnvVars env = build.getEnvironment(listener);
+        env.overrideAll(((AbstractBuild< ? , ? >)build).getBuildVariables());
+      }
+      // To be able to enqueue the same build multiple times, they have to be made
+      // artificially different. We do that by adding a UUID. Everything else did not work.
+      ArrayList<Action> parameterActions = new ArrayList<>();
+      ArrayList<ParameterValue> parameterValues = new ArrayList<>();
+      parameterValues.add(
+          new StringParameterValue(UUID.randomUUID().toString(), UUID.randomUUID().toString()));
+      parameterActions.add(new ParametersAction(parameterValues));
+
+      Future<Run> future = schedule(build, workerJob,
+          ((ParameterizedJobMixIn.ParameterizedJob)workerJob).getQuietPeriod(), parameterActions);
+      if (future == null) {
+        finishTry(false);
+        return;
+      }
+      scheduled = future;
+      if (completion.isDone()) {
+        // canceled while scheduling
+        future.cancel(true);
+        return;
       }
-    });
-    runner.start();
+      Timer.get().schedule(this::poll, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    } catch (IOException e) {
+      logger.error(e.getMessage());
+      // retry
+      finishTry(false);
+    } catch (InterruptedException e) {
+      cancel();
+    } catch (RuntimeException e) {
+      logger.error("Could not schedule worker job: " + e.getMessage());
+      finishTry(false);
+    }
+  }
+
+  /**
+   * Checks if the scheduled try is finished. If not the check is scheduled again.
+   */
+  private void poll() {
+    Future<Run> future = scheduled;
+    if (completion.isDone() || future == null) {
+      return;
+    }
+    if (!future.isDone()) {
+      Timer.get().schedule(this::poll, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+      return;
+    }
+    boolean success = false;
+    try {
+      Run run = future.get();
+      lastRun = run;
+      // retry if cancled or failed
+      Result result = run.getResult();
+      if (result != null) {
+        success = result.isBetterOrEqualTo(Result.UNSTABLE);
+      } else {
+        assert false : "Build should not be running since the future is done";
+        success = true;
+      }
+    } catch (CancellationException e) {
+      logger.error("Execution of test worker job was canceled.");
+      tries = 0;
+    } catch (ExecutionException e) {
+      logger.error(e.getMessage());
+      // retry
+    } catch (InterruptedException e) {
+      // cannot happen, the future is already done
+      Thread.currentThread().interrupt();
+    }
+    finishTry(success);
+  }
+
+  private void finishTry(boolean success) {
+    tries--;
+    if (success || tries <= 0) {
+      completion.complete(null);
+      return;
+    }
+    logger.info("Job execution failed. Scheduling job for retry. It is possible that two test cases"
+        + " have the same name, if so please make the test cases names unique.");
+    Timer.get().submit(this::scheduleTry);
   }
 
   /**
-   * joins the threads
+   * Waits until the worker job succeeded or all tries are used up.
+   * 
+   * @throws InterruptedException
+   *           if the waiting thread was interrupted or the job was canceled
    */
   void join() throws InterruptedException {
-    runner.join();
+    try {
+      completion.get();
+    } catch (ExecutionException e) {
+      logger.error(e.getMessage());
+    }
     if (interruptedException != null) {
       throw interruptedException;
     }
   }
 
   /**
-   * interrupt the thread
+   * Cancels the scheduled or running worker job and stops retrying.
    */
   void cancel() {
-    runner.interrupt();
+    if (completion.isDone()) {
+      return;
+    }
+    tries = 0;
+    interruptedException = new InterruptedException("Execution of test worker job was canceled.");
+    completion.complete(null);
+    Future<Run> future = scheduled;
+    if (future != null) {
+      future.cancel(true);
+    }
   }
 
   /**
@@ -0,0 +1,242 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2018 Synopsys Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.piketec.jenkins.plugins.tpt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import com.piketec.jenkins.plugins.tpt.TptLog.LogLevel;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Splits the test cases of a distributing job into the sub test sets for the worker jobs. The test
+ * cases are packed by their expected execution duration (longest processing time first), so all
+ * worker jobs finish at roughly the same time. The expected durations are taken from the
+ * "testcase_information.xml" files of the previous run. Test cases without a known duration are
+ * assumed to take the configured default duration.
+ */
+class TestCasePartitioner {
+
+  private final Map<String, Long> durations;
+
+  private final long defaultDuration;
+
+  /**
+   * @param durations
+   *          the known execution durations in milliseconds, key is the test case name
+   * @param defaultDuration
+   *          the duration in milliseconds that is assumed for test cases without a known duration
+   */
+  TestCasePartitioner(Map<String, Long> durations, long defaultDuration) {
+    this.durations = durations;
+    this.defaultDuration = Math.max(defaultDuration, 0);
+  }
+
+  /**
+   * Collects the execution durations of the test cases found in the given test data directory. If
+   * a test case was executed on several platforms the durations are summed up. The files are
+   * parsed on the agent and only the durations are sent back.
+   * 
+   * @param testDataDir
+   *          The test data directory of the previous run
+   * @param logger
+   *          to display the information
+   * @return the execution durations in milliseconds, key is the test case name
+   * @throws InterruptedException
+   *           If the job was interrupted
+   */
+  static Map<String, Long> collectDurations(FilePath testDataDir, TptLogger logger)
+      throws InterruptedException {
+    Durations result;
+    try {
+      result = testDataDir.act(new CollectDurationsCallable());
+    } catch (IOException e) {
+      logger.warn("Could not search for execution durations of previous run: " + e.getMessage());
+      return new HashMap<>();
+    }
+    for (String error : result.errors) {
+      logger.warn(error);
+    }
+    return result.durations;
+  }
+
+  /**
+   * @param testCase
+   *          the name of the test case
+   * @return the expected execution duration of the test case in milliseconds
+   */
+  long getDuration(String testCase) {
+    Long duration = durations.get(testCase);
+    return duration == null ? defaultDuration : duration.longValue();
+  }
+
+  /**
+   * @param testCases
+   *          the test cases
+   * @return <code>true</code> if no execution duration is known for any of the given test cases
+   */
+  boolean isUnknown(Collection<String> testCases) {
+    for (String testCase : testCases) {
+      if (durations.containsKey(testCase)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param testCases
+   *          the test cases
+   * @return the test cases sorted by expected execution duration, longest first. Test cases with
+   *         the same duration are sorted by name.
+   */
+  List<String> sortByDuration(Collection<String> testCases) {
+    List<String> sorted = new ArrayList<>(testCases);
+    Collections.sort(sorted, Comparator.comparingLong((String tc) -> getDuration(tc)).reversed()
+        .thenComparing(Comparator.naturalOrder()));
+    return sorted;
+  }
+
+  /**
+   * Distributes the test cases to at most <code>partitionCount</code> sub test sets. The longest
+   * test case is always added to the sub test set with the currently smallest expected execution
+   * duration. Empty sub test sets are not returned.
+   * 
+   * @param testCases
+   *          the test cases to distribute
+   * @param partitionCount
+   *          the maximal number of sub test sets
+   * @return the sub test sets, every sub test set is sorted by expected execution duration
+   */
+  List<List<String>> partition(Collection<String> testCases, int partitionCount) {
+    int count = Math.max(1, Math.min(partitionCount, testCases.size()));
+    List<List<String>> partitions = new ArrayList<>(count);
+    long[] loads = new long[count];
+    PriorityQueue<Integer> queue = new PriorityQueue<>(count,
+        Comparator.comparingLong((Integer i) -> loads[i]).thenComparing(Comparator.naturalOrder()));
+    for (int i = 0; i < count; i++) {
+      partitions.add(new ArrayList<>());
+      queue.add(i);
+    }
+    for (String testCase : sortByDuration(testCases)) {
+      int idx = queue.poll();
+      partitions.get(idx).add(testCase);
+      loads[idx] += getDuration(testCase);
+      queue.add(idx);
+    }
+    partitions.removeIf(List::isEmpty);
+    return partitions;
+  }
+
+  /**
+   * Splits the test cases into batches of at most <code>batchSize</code> test cases for the
+   * dynamic distribution mode. The longest test cases are in the first batches, so they are
+   * executed first and the worker jobs finish at roughly the same time.
+   * 
+   * @param testCases
+   *          the test cases to split
+   * @param batchSize
+   *          the maximal number of test cases in a batch
+   * @return the batches in the order they should be executed
+   */
+  List<List<String>> batches(Collection<String> testCases, int batchSize) {
+    int size = Math.max(1, batchSize);
+    List<List<String>> batches = new ArrayList<>();
+    List<String> sorted = sortByDuration(testCases);
+    for (int i = 0; i < sorted.size(); i += size) {
+      batches.add(new ArrayList<>(sorted.subList(i, Math.min(i + size, sorted.size()))));
+    }
+    return batches;
+  }
+
+  /**
+   * @param testCases
+   *          the test cases
+   * @return the expected execution duration of all given test cases in milliseconds
+   */
+  long getTotalDuration(Collection<String> testCases) {
+    long sum = 0;
+    for (String testCase : testCases) {
+      sum += getDuration(testCase);
+    }
+    return sum;
+  }
+
+  /**
+   * The execution durations found on the agent and the errors that occured while parsing.
+   */
+  private static final class Durations implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final HashMap<String, Long> durations = new HashMap<>();
+
+    private final ArrayList<String> errors = new ArrayList<>();
+
+  }
+
+  /**
+   * Parses the "testcase_information.xml" files on the agent and sums up the durations per test
+   * case, so only one remote call is needed and only the durations are transferred.
+   */
+  private static final class CollectDurationsCallable
+      extends MasterToSlaveFileCallable<Durations> {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Durations invoke(File testDataDir, VirtualChannel channel)
+        throws IOException, InterruptedException {
+      Durations result = new Durations();
+      if (!testDataDir.isDirectory()) {
+        return result;
+      }
+      // the log is not needed here
+      TestCasesParseResult parsed =
+          new Publish.ParseTestCasesCallable(false, LogLevel.NONE, 0, null)
+              .invoke(testDataDir, channel);
+      result.errors.addAll(parsed.errors);
+      for (Testcase tc : parsed.testCases) {
+        try {
+          long duration = Long.parseLong(tc.getExecDuration());
+          result.durations.merge(tc.getName(), duration, Long::sum);
+        } catch (NumberFormatException e) {
+          // NOP, unknown duration -> use default
+        }
+      }
+      return result;
+    }
+
+  }
+
+}
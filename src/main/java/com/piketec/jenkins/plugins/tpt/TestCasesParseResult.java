@@ -1,13 +1,29 @@
 package com.piketec.jenkins.plugins.tpt;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
-class TestCasesParseResult {
+import com.piketec.jenkins.plugins.tpt.publisher.TPTReportModel;
+
+class TestCasesParseResult implements Serializable {
+
+  private static final long serialVersionUID = 1L;
 
   final List<Testcase> testCases;
 
   final Testcase virtualGlobalAssessletTestCase;
 
+  /**
+   * Messages of test result files that could not be parsed
+   */
+  final List<String> errors = new ArrayList<>();
+
+  /**
+   * The TPT report content, if it was requested while parsing
+   */
+  TPTReportModel reportModel = null;
+
   TestCasesParseResult(List<Testcase> testCases, Testcase virtualGlobalAssessletTestCase) {
     this.testCases = testCases;
     this.virtualGlobalAssessletTestCase = virtualGlobalAssessletTestCase;
@@ -20,6 +20,7 @@
  */
 package com.piketec.jenkins.plugins.tpt;
 
+import java.io.Serializable;
 import java.util.Date;
 import java.util.List;
 
@@ -31,7 +32,9 @@ import com.piketec.jenkins.plugins.tpt.TptLog.LogLevel;
  * 
  * @author jkuhnert, Synopsys Inc.
  */
-public class Testcase {
+public class Testcase implements Serializable {
+
+  private static final long serialVersionUID = 1L;
 
   private String executionConfigName;
 
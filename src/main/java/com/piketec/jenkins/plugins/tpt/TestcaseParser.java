@@ -22,12 +22,13 @@ package com.piketec.jenkins.plugins.tpt;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -45,16 +46,28 @@ import hudson.FilePath;
  */
 public class TestcaseParser extends DefaultHandler {
 
-  private static final SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss dd.MM.yyyy");
+  // immutable and thread safe, single letter fields also accept the zero padded form "HH:mm:ss"
+  private static final DateTimeFormatter DATE_FORMAT =
+      DateTimeFormatter.ofPattern("H:m:s d.M.yyyy");
+
+  private final LogLevel retainedLogLevel;
+
+  private final int maxLogCharacters;
 
   private Testcase ti = null;
 
   private LogLevel type = null;
 
-  private StringBuffer logString = null;
+  private StringBuilder logString = null;
+
+  private int logCharacters = 0;
+
+  private boolean logTruncated = false;
+
+  private boolean errorLogged = false;
 
   /**
-   * Parse an XML file to retrieve a testcase info instance (non null)
+   * Parse an XML file to retrieve a testcase info instance (non null). All log entries are kept.
    * 
    * @param xmlFile
    *          testcase_information.xml
@@ -66,13 +79,42 @@ public class TestcaseParser extends DefaultHandler {
    *           If the Job is cancelled
    */
   public static Testcase parseXml(FilePath xmlFile) throws IOException, InterruptedException {
+    return parseXml(xmlFile, LogLevel.ALL, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Parse an XML file to retrieve a testcase info instance (non null). Log entries below the given
+   * level are skipped while parsing. If the log messages of the test case exceed the given number
+   * of characters the remaining entries are dropped, except the first error, so the test case is
+   * still recognized as failed.
+   * 
+   * @param xmlFile
+   *          testcase_information.xml
+   * @param retainedLogLevel
+   *          The lowest severity of log entries that are kept
+   * @param maxLogCharacters
+   *          The maximal number of log message characters that are kept
+   * @return A testcase, filled with the content of the xml-file.
+   * 
+   * @throws IOException
+   *           if the xml file cannot be read or has a wrong format
+   * @throws InterruptedException
+   *           If the Job is cancelled
+   */
+  public static Testcase parseXml(FilePath xmlFile, LogLevel retainedLogLevel,
+                                  int maxLogCharacters)
+      throws IOException, InterruptedException {
     try (InputStream inputStream = xmlFile.read()) {
-      TestcaseParser parser = new TestcaseParser();
-      SAXParserFactory.newInstance().newSAXParser().parse(inputStream, parser);
+      TestcaseParser parser = new TestcaseParser(retainedLogLevel, maxLogCharacters);
+      XmlParsers.parse(inputStream, parser);
       if (parser.ti == null) {
         throw new IOException(
             "XML file " + xmlFile + " does not contain tag <testcaseinformation>");
       }
+      if (parser.logTruncated) {
+        parser.ti.addLogEntry("Log truncated after " + maxLogCharacters + " characters.",
+            LogLevel.WARNING);
+      }
       return parser.ti;
     } catch (ParserConfigurationException e) {
       throw new IOException("XML parser config error: " + e.getMessage());
@@ -85,7 +127,9 @@ public class TestcaseParser extends DefaultHandler {
 
   // -------------------------------------
 
-  private TestcaseParser() {
+  private TestcaseParser(LogLevel retainedLogLevel, int maxLogCharacters) {
+    this.retainedLogLevel = retainedLogLevel;
+    this.maxLogCharacters = Math.max(0, maxLogCharacters);
   }
 
   @Override
@@ -107,7 +151,6 @@ public class TestcaseParser extends DefaultHandler {
       ti.setExecDate(parseDate(attributes.getValue("ExecDate")));
 
     } else if (elementName.equalsIgnoreCase("Log")) {
-      logString = new StringBuffer();
       String type = attributes.getValue("Type");
       if (type == null) {
         this.type = LogLevel.ALL;
@@ -121,21 +164,49 @@ public class TestcaseParser extends DefaultHandler {
       } else if (!type.equalsIgnoreCase("invisible")) {
         this.type = LogLevel.ALL;
       }
+      // filtered entries are not even collected
+      logString = isRetained(this.type) ? new StringBuilder() : null;
     }
   }
 
+  /**
+   * @return <code>true</code> if an entry of the given level has to be kept
+   */
+  private boolean isRetained(LogLevel level) {
+    if (level == null || level == LogLevel.NONE
+        || level.ordinal() > retainedLogLevel.ordinal()) {
+      return false;
+    }
+    // the first error decides if the test case is failed, so it is kept even beyond the limit
+    return logCharacters < maxLogCharacters || (level == LogLevel.ERROR && !errorLogged);
+  }
+
   @Override
   public void endElement(String uri, String localName, String qName) throws SAXException {
     if (qName.equalsIgnoreCase("log")) {
-      ti.addLogEntry(logString.toString(), type);
-      logString = null;
+      if (logString != null) {
+        ti.addLogEntry(logString.toString(), type);
+        logCharacters += logString.length();
+        errorLogged |= type == LogLevel.ERROR;
+        logString = null;
+      } else if (type != null && type != LogLevel.NONE
+          && type.ordinal() <= retainedLogLevel.ordinal()) {
+        logTruncated = true;
+      }
     }
   }
 
   @Override
   public void characters(char[] ac, int i, int j) throws SAXException {
     if (logString != null) {
-      logString.append(ac, i, j);
+      // a single entry may use the remaining characters, an error at least one line
+      int remaining = Math.max(maxLogCharacters - logCharacters, 1000) - logString.length();
+      if (j > remaining) {
+        logString.append(ac, i, Math.max(remaining, 0));
+        logTruncated = true;
+      } else {
+        logString.append(ac, i, j);
+      }
     }
   }
 
@@ -148,12 +219,11 @@ public class TestcaseParser extends DefaultHandler {
    */
   private Date parseDate(String value) throws SAXException {
     if (value != null) {
-      synchronized (sdf) {
-        try {
-          return sdf.parse(value);
-        } catch (ParseException e) {
-          throw new SAXException("Can't parse date format \"" + value + "\"");
-        }
+      try {
+        LocalDateTime date = LocalDateTime.parse(value, DATE_FORMAT);
+        return Date.from(date.atZone(ZoneId.systemDefault()).toInstant());
+      } catch (DateTimeParseException e) {
+        throw new SAXException("Can't parse date format \"" + value + "\"");
       }
     } else {
       return null;
@@ -7,7 +7,6 @@ import java.util.Date;
 import java.util.List;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -48,9 +47,30 @@ public class TestcaseSummaryParser extends DefaultHandler {
    */
   public static TestCasesParseResult parseXml(FilePath xmlFile)
       throws IOException, InterruptedException {
+    return parseXml(xmlFile, null);
+  }
+
+  /**
+   * Parse an XML file to retrieve a testcase info instance (non null). The SAX events are also
+   * forwarded to the given handler, so it gets its data from the same pass over the file.
+   * 
+   * @param xmlFile
+   *          test_summary.xml
+   * @param additionalHandler
+   *          a handler that also gets the content of the file, may be <code>null</code>
+   * @return A testcase, filled with the content of the xml-file. Result is allways Execution Error.
+   * 
+   * @throws IOException
+   *           if the xml file cannot be read or has a wrong format
+   * @throws InterruptedException
+   *           If the Job is cancelled
+   */
+  static TestCasesParseResult parseXml(FilePath xmlFile, DefaultHandler additionalHandler)
+      throws IOException, InterruptedException {
     try (InputStream inputStream = xmlFile.read()) {
       TestcaseSummaryParser parser = new TestcaseSummaryParser();
-      SAXParserFactory.newInstance().newSAXParser().parse(inputStream, parser);
+      XmlParsers.parse(inputStream,
+          additionalHandler == null ? parser : XmlParsers.tee(parser, additionalHandler));
       Testcase virtualGlobalAssessmentTestCase = null;
       if (parser.globalAssessmentResult != null) {
         virtualGlobalAssessmentTestCase = new Testcase();
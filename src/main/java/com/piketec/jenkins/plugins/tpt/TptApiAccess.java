@@ -2,13 +2,18 @@ package com.piketec.jenkins.plugins.tpt;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.UUID;
 
 import javax.annotation.CheckForNull;
 
 import com.piketec.jenkins.plugins.tpt.api.callables.ExecuteTestsWorkerJobCallable;
+import com.piketec.jenkins.plugins.tpt.api.callables.ExecutionProgressListener;
 import com.piketec.jenkins.plugins.tpt.api.callables.GetTestCasesCallable;
 import com.piketec.jenkins.plugins.tpt.api.callables.GetTestCasesCallableResult;
+import com.piketec.jenkins.plugins.tpt.api.callables.LeaseTptInstanceCallable;
+import com.piketec.jenkins.plugins.tpt.api.callables.ReleaseTptInstanceCallable;
 import com.piketec.jenkins.plugins.tpt.api.callables.RunOverviewReportCallable;
+import com.piketec.jenkins.plugins.tpt.api.callables.TptInstanceLease;
 
 import hudson.FilePath;
 import hudson.Launcher;
@@ -152,29 +157,134 @@ public class TptApiAccess {
    *          - path to where the test data shall be put
    * @param testSetList
    *          The list of test cases to execute
+   * @param progressListener
+   *          receives the progress of the execution, may be <code>null</code>
    * @return true if the execution was successful, false otherwise.
    * @throws InterruptedException
    *           If thread was interrupted
    */
   public Boolean executeTestsOnWorker(FilePath tptFilePath, String executionConfigName,
                                      String testSetName, FilePath workerJobReportPath,
-                                     FilePath workerJobDataPath, List<String> testSetList)
+                                     FilePath workerJobDataPath, List<String> testSetList,
+                                     @CheckForNull ExecutionProgressListener progressListener)
       throws InterruptedException {
-    ExecuteTestsWorkerJobCallable callable =
-        new ExecuteTestsWorkerJobCallable(launcher.getListener(), tptPort, tptBindingName, exePaths,
-            arguments, startUpWaitTime, tptFilePath, workerJobReportPath, workerJobDataPath,
-            executionConfigName, testSetList, testSetName);
     Boolean worked = false;
+    DetachableProgressListener exported =
+        progressListener == null ? null : new DetachableProgressListener(progressListener);
     try {
       VirtualChannel channel = launcher.getChannel();
       if (channel == null) {
         logger.error("Unable to execute tests on agent: Agent does not support virtual channels.");
         return worked;
       }
+      ExecuteTestsWorkerJobCallable callable =
+          new ExecuteTestsWorkerJobCallable(launcher.getListener(), tptPort, tptBindingName,
+              exePaths, arguments, startUpWaitTime, tptFilePath, workerJobReportPath,
+              workerJobDataPath, executionConfigName, testSetList, testSetName,
+              exported == null ? null : channel.export(ExecutionProgressListener.class, exported));
       worked = channel.call(callable);
     } catch (IOException e) {
       logger.error("\"Unable to execute tests on agent: " + e.getMessage());
+    } finally {
+      if (exported != null) {
+        exported.detach();
+      }
     }
     return worked;
   }
+
+  /**
+   * Leases a TPT instance from the pool on the agent. The port and binding name given in the
+   * constructor are those of the first instance of the pool. If the thread is interrupted while
+   * waiting for the lease, the lease is cancelled on the agent.
+   * 
+   * @param maxInstances
+   *          the maximum number of TPT instances in the pool
+   * @param idleTimeout
+   *          the time in milliseconds after that an unused TPT instance is closed
+   * @return the leased instance or <code>null</code> if no TPT instance could be started
+   * @throws InterruptedException
+   *           If thread was interrupted
+   */
+  @CheckForNull
+  public TptInstanceLease leaseInstance(int maxInstances, long idleTimeout)
+      throws InterruptedException {
+    String leaseId = UUID.randomUUID().toString();
+    LeaseTptInstanceCallable callable =
+        new LeaseTptInstanceCallable(launcher.getListener(), tptPort, tptBindingName, exePaths,
+            arguments, startUpWaitTime, leaseId, maxInstances, idleTimeout);
+    VirtualChannel channel = launcher.getChannel();
+    if (channel == null) {
+      logger.error("Unable to lease TPT instance: Agent does not support virtual channels.");
+      return null;
+    }
+    try {
+      return channel.call(callable);
+    } catch (IOException e) {
+      logger.error("Unable to lease TPT instance: " + e.getMessage());
+      release(leaseId);
+      return null;
+    } catch (InterruptedException e) {
+      // clear the interrupted flag, otherwise the release call is interrupted as well
+      Thread.interrupted();
+      release(leaseId);
+      Thread.currentThread().interrupt();
+      throw e;
+    }
+  }
+
+  /**
+   * Gives a TPT instance leased with {@link #leaseInstance(int, long)} back to the pool.
+   * 
+   * @param lease
+   *          the leased instance
+   * @throws InterruptedException
+   *           If thread was interrupted
+   */
+  public void releaseInstance(TptInstanceLease lease) throws InterruptedException {
+    release(lease.leaseId);
+  }
+
+  private void release(String leaseId) throws InterruptedException {
+    ReleaseTptInstanceCallable callable =
+        new ReleaseTptInstanceCallable(tptPort, tptBindingName, leaseId);
+    try {
+      VirtualChannel channel = launcher.getChannel();
+      if (channel == null) {
+        logger.error("Unable to release TPT instance: Agent does not support virtual channels.");
+        return;
+      }
+      channel.call(callable);
+    } catch (IOException e) {
+      logger.error("Unable to release TPT instance: " + e.getMessage());
+    }
+  }
+
+  /**
+   * The listener that is exported to the agent. The export table of the channel keeps it until the
+   * proxy on the agent is garbage collected, so it is detached from the actual listener (usually
+   * an action of the build) as soon as the execution is done.
+   */
+  private static final class DetachableProgressListener implements ExecutionProgressListener {
+
+    @CheckForNull
+    private volatile ExecutionProgressListener delegate;
+
+    DetachableProgressListener(ExecutionProgressListener delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void progress(int executed, int total) {
+      ExecutionProgressListener listener = delegate;
+      if (listener != null) {
+        listener.progress(executed, total);
+      }
+    }
+
+    void detach() {
+      delegate = null;
+    }
+
+  }
 }
@@ -20,38 +20,67 @@
  */
 package com.piketec.jenkins.plugins.tpt;
 
-import java.util.LinkedList;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-class TptLog {
+class TptLog implements Serializable {
+
+  private static final long serialVersionUID = 1L;
 
   static enum LogLevel {
     NONE, ERROR, WARNING, INFO, ALL
   }
 
-  private List<LogEntry> logEntries = new LinkedList<>();
+  private static final LogLevel[] LEVELS = LogLevel.values();
+
+  // compact storage: level ordinals and messages in parallel arrays, grown on demand
+  private byte[] levels = new byte[0];
+
+  private String[] messages = new String[0];
+
+  private int size = 0;
 
   public void log(LogLevel level, String message) {
     if (level == LogLevel.NONE) {
       return;
     }
-    logEntries.add(new LogEntry(level, message));
+    if (size == messages.length) {
+      int capacity = Math.max(4, size * 2);
+      levels = Arrays.copyOf(levels, capacity);
+      messages = Arrays.copyOf(messages, capacity);
+    }
+    levels[size] = (byte)level.ordinal();
+    messages[size] = message;
+    size++;
   }
 
   List<LogEntry> getLog(LogLevel level) {
-    List<LogEntry> result = new LinkedList<>();
+    List<LogEntry> result = new ArrayList<>();
     if (level == LogLevel.NONE) {
       return result;
     }
-    for (LogEntry entry : logEntries) {
-      if (entry.level.ordinal() <= level.ordinal()) {
-        result.add(entry);
+    for (int i = 0; i < size; i++) {
+      if (levels[i] <= level.ordinal()) {
+        result.add(new LogEntry(LEVELS[levels[i]], messages[i]));
       }
     }
     return result;
   }
 
-  public static class LogEntry {
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    // don't send the unused capacity over the wire
+    levels = Arrays.copyOf(levels, size);
+    messages = Arrays.copyOf(messages, size);
+    out.defaultWriteObject();
+  }
+
+  public static class LogEntry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     final LogLevel level;
 
@@ -82,6 +82,16 @@ public class TptPlugin extends Builder implements SimpleBuildStep {
   @CheckForNull
   private String workerJobTries = null;
 
+  @CheckForNull
+  private String defaultTestCaseDuration = null;
+
+  private boolean dynamicDistribution = DescriptorImpl.getDefaultDynamicDistribution();
+
+  @CheckForNull
+  private String testCasesPerBatch = null;
+
+  private boolean partialRetry = DescriptorImpl.getDefaultPartialRetry();
+
   @CheckForNull
   private String tptBindingName = null;
 
@@ -100,6 +110,12 @@ public class TptPlugin extends Builder implements SimpleBuildStep {
   @CheckForNull
   private LogLevel jUnitLogLevel = null;
 
+  @CheckForNull
+  private JUnitSharding jUnitSharding = null;
+
+  @CheckForNull
+  private String jUnitTestCasesPerFile = null;
+
   private final ArrayList<JenkinsConfiguration> executionConfiguration;
 
   private transient TptLogger logger;
@@ -322,6 +338,84 @@ public class TptPlugin extends Builder implements SimpleBuildStep {
         DescriptorImpl.DEFAULT_WORKER_JOB_TRIES.equals(slaveJobTries) ? null : slaveJobTries;
   }
 
+  /**
+   * @return The execution duration in seconds that is assumed for test cases without a known
+   *         execution duration from the previous run. Used to distribute the test cases evenly to
+   *         the worker jobs.
+   */
+  public String getDefaultTestCaseDuration() {
+    return defaultTestCaseDuration == null ? DescriptorImpl.DEFAULT_TEST_CASE_DURATION
+        : defaultTestCaseDuration;
+  }
+
+  /**
+   * @param defaultTestCaseDuration
+   *          The execution duration in seconds that is assumed for test cases without a known
+   *          execution duration from the previous run. Used to distribute the test cases evenly to
+   *          the worker jobs.
+   */
+  @DataBoundSetter
+  public void setDefaultTestCaseDuration(String defaultTestCaseDuration) {
+    this.defaultTestCaseDuration =
+        DescriptorImpl.DEFAULT_TEST_CASE_DURATION.equals(defaultTestCaseDuration) ? null
+            : defaultTestCaseDuration;
+  }
+
+  /**
+   * @return Should the worker jobs pull small batches of test cases from a shared queue until all
+   *         test cases are executed instead of getting a fixed set of test cases
+   */
+  public boolean isDynamicDistribution() {
+    return dynamicDistribution;
+  }
+
+  /**
+   * @param dynamicDistribution
+   *          Should the worker jobs pull small batches of test cases from a shared queue until all
+   *          test cases are executed instead of getting a fixed set of test cases
+   */
+  @DataBoundSetter
+  public void setDynamicDistribution(boolean dynamicDistribution) {
+    this.dynamicDistribution = dynamicDistribution;
+  }
+
+  /**
+   * @return The maximal number of test cases in a batch if dynamic distribution is used
+   */
+  public String getTestCasesPerBatch() {
+    return testCasesPerBatch == null ? DescriptorImpl.DEFAULT_TEST_CASES_PER_BATCH
+        : testCasesPerBatch;
+  }
+
+  /**
+   * @param testCasesPerBatch
+   *          The maximal number of test cases in a batch if dynamic distribution is used
+   */
+  @DataBoundSetter
+  public void setTestCasesPerBatch(String testCasesPerBatch) {
+    this.testCasesPerBatch =
+        DescriptorImpl.DEFAULT_TEST_CASES_PER_BATCH.equals(testCasesPerBatch) ? null
+            : testCasesPerBatch;
+  }
+
+  /**
+   * @return Should a retry of a failed worker job only execute the test cases that produced no
+   *         result instead of all test cases of the worker job
+   */
+  public boolean isPartialRetry() {
+    return partialRetry;
+  }
+
+  /**
+   * @param partialRetry
+   *          Should a retry of a failed worker job only execute the test cases that produced no
+   *          result instead of all test cases of the worker job
+   */
+  @DataBoundSetter
+  public void setPartialRetry(boolean partialRetry) {
+    this.partialRetry = partialRetry;
+  }
+
   /**
    * @return the RMI binding name for TPT
    */
@@ -449,6 +543,56 @@ public class TptPlugin extends Builder implements SimpleBuildStep {
         DescriptorImpl.getDefaultJUnitLogLevel().equals(jUnitLogLevel) ? null : jUnitLogLevel;
   }
 
+  /**
+   * @return How the JUnit results of a configuration are split into several files
+   */
+  public JUnitSharding getJUnitSharding() {
+    return jUnitSharding == null ? DescriptorImpl.getDefaultJUnitSharding() : jUnitSharding;
+  }
+
+  /**
+   * @param jUnitSharding
+   *          How the JUnit results of a configuration are split into several files
+   */
+  @DataBoundSetter
+  public void setjUnitSharding(JUnitSharding jUnitSharding) {
+    this.jUnitSharding =
+        DescriptorImpl.getDefaultJUnitSharding().equals(jUnitSharding) ? null : jUnitSharding;
+  }
+
+  /**
+   * @return The maximal number of test cases per JUnit file if sharded by test case count
+   */
+  public String getJUnitTestCasesPerFile() {
+    return jUnitTestCasesPerFile == null ? DescriptorImpl.DEFAULT_JUNIT_TEST_CASES_PER_FILE
+        : jUnitTestCasesPerFile;
+  }
+
+  /**
+   * @param jUnitTestCasesPerFile
+   *          The maximal number of test cases per JUnit file if sharded by test case count
+   */
+  @DataBoundSetter
+  public void setjUnitTestCasesPerFile(String jUnitTestCasesPerFile) {
+    this.jUnitTestCasesPerFile =
+        DescriptorImpl.DEFAULT_JUNIT_TEST_CASES_PER_FILE.equals(jUnitTestCasesPerFile) ? null
+            : jUnitTestCasesPerFile;
+  }
+
+  /**
+   * Expands and parses the maximal number of test cases per JUnit file.
+   */
+  private int parseJUnitTestCasesPerFile(EnvVars environment) {
+    String testCasesPerFile = environment.expand(getJUnitTestCasesPerFile());
+    try {
+      return Integer.parseInt(testCasesPerFile);
+    } catch (NumberFormatException e) {
+      logger.error("The given number of test cases per JUnit file \"" + testCasesPerFile
+          + "\" is not an integer. Using default value.");
+      return Integer.parseInt(DescriptorImpl.DEFAULT_JUNIT_TEST_CASES_PER_FILE);
+    }
+  }
+
   // --------------------------------------------------------------
 
   @Override
@@ -510,7 +654,8 @@ public class TptPlugin extends Builder implements SimpleBuildStep {
     // start execution
     TptPluginSingleJobExecutor executor =
         new TptPluginSingleJobExecutor(run, workspace, launcher, listener, expandedExePaths,
-            expandedArguments, configs, jUnitXmlPath, getJUnitLogLevel(), isEnableJunit());
+            expandedArguments, configs, jUnitXmlPath, getJUnitLogLevel(), getJUnitSharding(),
+            parseJUnitTestCasesPerFile(environment), isEnableJunit());
     return executor.execute();
 
   }
@@ -614,6 +759,32 @@ public class TptPlugin extends Builder implements SimpleBuildStep {
             + environment.expand(workerJobCount) + "\" is not an integer. Using default value.");
       }
     }
+    // expand defaultTestCaseDuration
+    long parsedDefaultTestCaseDuration =
+        Long.parseLong(DescriptorImpl.DEFAULT_TEST_CASE_DURATION) * 1000;
+    String defaultTestCaseDuration = getDefaultTestCaseDuration();
+    if (!defaultTestCaseDuration.isEmpty()) {
+      try {
+        parsedDefaultTestCaseDuration =
+            Long.parseLong(environment.expand(defaultTestCaseDuration)) * 1000;
+      } catch (NumberFormatException e) {
+        logger.error("The given default test case duration \""
+            + environment.expand(defaultTestCaseDuration)
+            + "\" is not an integer. Using default value.");
+      }
+    }
+    // expand testCasesPerBatch
+    int parsedTestCasesPerBatch = Integer.parseInt(DescriptorImpl.DEFAULT_TEST_CASES_PER_BATCH);
+    String testCasesPerBatch = getTestCasesPerBatch();
+    if (!testCasesPerBatch.isEmpty()) {
+      try {
+        parsedTestCasesPerBatch = Integer.parseInt(environment.expand(testCasesPerBatch));
+      } catch (NumberFormatException e) {
+        logger.error("The given number of test cases per batch \""
+            + environment.expand(testCasesPerBatch)
+            + "\" is not an integer. Using default value.");
+      }
+    }
     // expand other variables
     String expandedWorkerJobName = environment.expand(getWorkerJob());
     // start execution
@@ -621,7 +792,9 @@ public class TptPlugin extends Builder implements SimpleBuildStep {
         new TptPluginDistributingJobExecutor(build, workspace, launcher, listener, expandedExePaths,
             expandedArguments, configs, expandedTptPort, expandedTptBindingName,
             expandedWorkerJobName, expandedTptStartupWaitTime, parsedWorkerJobCount,
-            parsedWorkerJobTries, jUnitXmlPath, getJUnitLogLevel(), isEnableJunit());
+            parsedWorkerJobTries, parsedDefaultTestCaseDuration, dynamicDistribution,
+            parsedTestCasesPerBatch, partialRetry, jUnitXmlPath, getJUnitLogLevel(),
+            getJUnitSharding(), parseJUnitTestCasesPerFile(environment), isEnableJunit());
     try {
       return executor.execute();
     } finally {
@@ -651,6 +824,12 @@ public class TptPlugin extends Builder implements SimpleBuildStep {
 
     public static final String DEFAULT_WORKER_JOB_TRIES = "1";
 
+    public static final String DEFAULT_TEST_CASE_DURATION = "60";
+
+    public static final String DEFAULT_TEST_CASES_PER_BATCH = "5";
+
+    public static final String DEFAULT_JUNIT_TEST_CASES_PER_FILE = "1000";
+
     /**
      * @return "TptApi"
      */
@@ -665,6 +844,20 @@ public class TptPlugin extends Builder implements SimpleBuildStep {
       return false;
     }
 
+    /**
+     * @return <code>false</code>
+     */
+    public static boolean getDefaultDynamicDistribution() {
+      return false;
+    }
+
+    /**
+     * @return <code>false</code>
+     */
+    public static boolean getDefaultPartialRetry() {
+      return false;
+    }
+
     /**
      * @return "1099"
      */
@@ -693,6 +886,13 @@ public class TptPlugin extends Builder implements SimpleBuildStep {
       return LogLevel.INFO;
     }
 
+    /**
+     * @return <code>NONE</code>
+     */
+    public static JUnitSharding getDefaultJUnitSharding() {
+      return JUnitSharding.NONE;
+    }
+
     /**
      * Basic validation of the entered paths to tpt.exe. At least one must exist.
      * 
@@ -733,6 +933,21 @@ public class TptPlugin extends Builder implements SimpleBuildStep {
       }
       return items;
     }
+
+    /**
+     * Makes the combobox list on the descriptor with all the possible options for the JUnit
+     * sharding
+     * 
+     * @return items from the combobox list
+     */
+    @SuppressWarnings({ "lgtm[jenkins/csrf]", "lgtm[jenkins/no-permission-check]" })
+    public ListBoxModel doFillJUnitShardingItems() {
+      ListBoxModel items = new ListBoxModel();
+      for (JUnitSharding sharding : JUnitSharding.values()) {
+        items.add(sharding.name());
+      }
+      return items;
+    }
   }
 
 }
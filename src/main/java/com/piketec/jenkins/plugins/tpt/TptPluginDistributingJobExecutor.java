@@ -23,9 +23,10 @@ package com.piketec.jenkins.plugins.tpt;
 import java.io.IOException;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -33,6 +34,7 @@ import com.piketec.jenkins.plugins.tpt.TptLog.LogLevel;
 import com.piketec.jenkins.plugins.tpt.Configuration.JenkinsConfiguration;
 import com.piketec.jenkins.plugins.tpt.api.callables.CleanUpCallable;
 import com.piketec.jenkins.plugins.tpt.api.callables.GetTestCasesCallableResult;
+import com.piketec.jenkins.plugins.tpt.publisher.TPTReportModel;
 
 import hudson.FilePath;
 import hudson.Launcher;
@@ -73,10 +75,22 @@ class TptPluginDistributingJobExecutor {
 
   private int workerJobTries;
 
+  private long defaultTestCaseDuration;
+
+  private boolean dynamicDistribution;
+
+  private int testCasesPerBatch;
+
+  private boolean partialRetry;
+
   private String jUnitXmlPath;
 
   private LogLevel jUnitLogLevel;
 
+  private JUnitSharding jUnitSharding;
+
+  private int jUnitTestCasesPerFile;
+
   private boolean enableJunit;
 
   /**
@@ -102,9 +116,23 @@ class TptPluginDistributingJobExecutor {
    *          the number of workerJobs that will be executed
    * @param workerJobTries
    *          used for the retryablejob
+   * @param defaultTestCaseDuration
+   *          the execution duration in milliseconds assumed for test cases that were not executed
+   *          in the previous run, used to distribute the test cases evenly
+   * @param dynamicDistribution
+   *          if the worker jobs should pull batches of test cases from a shared queue instead of
+   *          getting a fixed set of test cases
+   * @param testCasesPerBatch
+   *          the maximal number of test cases in a batch if dynamic distribution is used
+   * @param partialRetry
+   *          if a retry of a failed worker job should only execute the test cases without result
    * @param jUnitXmlPath
    *          the path where the jUnit XML is going to be created
    * @param jUnitLogLevel
+   * @param jUnitSharding
+   *          how the JUnit results are split into several files
+   * @param jUnitTestCasesPerFile
+   *          the maximal number of test cases per JUnit file if sharded by test case count
    * @param enableJunit
    *          to know if is necessary to generate the jUnit XML
    */
@@ -113,7 +141,10 @@ class TptPluginDistributingJobExecutor {
                                    List<JenkinsConfiguration> executionConfigs, int tptPort,
                                    String tptBindingName, String workerJobName,
                                    long tptStartupWaitTime, int workertJobCount, int workerJobTries,
+                                   long defaultTestCaseDuration, boolean dynamicDistribution,
+                                   int testCasesPerBatch, boolean partialRetry,
                                    String jUnitXmlPath, LogLevel jUnitLogLevel,
+                                   JUnitSharding jUnitSharding, int jUnitTestCasesPerFile,
                                    boolean enableJunit) {
     this.logger = new TptLogger(listener.getLogger());
     this.launcher = launcher;
@@ -129,7 +160,13 @@ class TptPluginDistributingJobExecutor {
     this.tptStartupWaitTime = tptStartupWaitTime;
     this.workerJobCount = workertJobCount;
     this.workerJobTries = workerJobTries;
+    this.defaultTestCaseDuration = defaultTestCaseDuration;
+    this.dynamicDistribution = dynamicDistribution;
+    this.testCasesPerBatch = testCasesPerBatch;
+    this.partialRetry = partialRetry;
     this.jUnitLogLevel = jUnitLogLevel;
+    this.jUnitSharding = jUnitSharding;
+    this.jUnitTestCasesPerFile = jUnitTestCasesPerFile;
     this.jUnitXmlPath = jUnitXmlPath;
     this.enableJunit = enableJunit;
   }
@@ -216,6 +253,9 @@ class TptPluginDistributingJobExecutor {
     FilePath testDataPath = new FilePath(workspace, Utils.getGeneratedTestDataDir(resolvedConfig));
     FilePath reportPath = new FilePath(workspace, Utils.getGeneratedReportDir(resolvedConfig));
     FilePath tptFilePath = new FilePath(workspace, resolvedConfig.getTptFile());
+    // Remember the execution durations of the previous run before the test data is deleted
+    Map<String, Long> previousDurations =
+        TestCasePartitioner.collectDurations(testDataPath, logger);
     try {
       logger.info("Create and/or clean test data directory \"" + testDataPath.getRemote() + "\"");
       testDataPath.mkdirs();
@@ -240,19 +280,47 @@ class TptPluginDistributingJobExecutor {
     }
     // Divide testcases into Workloads for the worker jobs to execute
     ArrayList<RetryableJob> retryableJobs = new ArrayList<>();
-    // create test sets for worker jobs
-    int workerJobSize;
-    int remainer;
-    if (workerJobCount >= 1) {
-      workerJobSize = testCases.testCases.size() / workerJobCount;
-      remainer = testCases.testCases.size() % workerJobCount;
+    // create test sets for worker jobs, balanced by the execution durations of the previous run
+    TestCasePartitioner partitioner =
+        new TestCasePartitioner(previousDurations, defaultTestCaseDuration);
+    if (partitioner.isUnknown(testCases.testCases)) {
+      logger.info("No execution durations of a previous run found. Assuming "
+          + defaultTestCaseDuration / 1000 + "s for every test case.");
+    }
+    List<WorkLoad> workloads = new ArrayList<>();
+    Queue<List<String>> batches = new ConcurrentLinkedQueue<>();
+    Queue<List<String>> failedBatches = new ConcurrentLinkedQueue<>();
+    if (dynamicDistribution) {
+      // all worker jobs pull small batches from the same queue until it is drained
+      batches.addAll(partitioner.batches(testCases.testCases, testCasesPerBatch));
+      int jobCount = workerJobCount >= 1 ? Math.min(workerJobCount, batches.size())
+          : batches.size();
+      logger.info("Create " + jobCount + " jobs for " + batches.size() + " batches of at most "
+          + testCasesPerBatch + " test cases (expected duration "
+          + partitioner.getTotalDuration(testCases.testCases) / 1000 + "s)");
+      for (int i = 0; i < jobCount; i++) {
+        WorkLoad workload = new WorkLoad(unresolvedConfig, batches, failedBatches, workspace,
+            build, testDataPath, reportPath);
+        workload.setBatchTries(workerJobTries);
+        workloads.add(workload);
+      }
     } else {
-      workerJobSize = 1;
-      remainer = 0;
+      List<List<String>> subTestSets;
+      if (workerJobCount >= 1) {
+        subTestSets = partitioner.partition(testCases.testCases, workerJobCount);
+      } else {
+        // every test case in its own job, longest test cases are scheduled first
+        subTestSets = partitioner.partition(testCases.testCases, testCases.testCases.size());
+      }
+      for (List<String> subTestSet : subTestSets) {
+        logger.info("Create job for \"" + subTestSet + "\" (expected duration "
+            + partitioner.getTotalDuration(subTestSet) / 1000 + "s)");
+        // creates the workloads for the worker jobs, with the smaller chunks of testsets
+        workloads.add(new WorkLoad(unresolvedConfig, subTestSet, workspace, build, testDataPath,
+            reportPath));
+      }
     }
-    ArrayList<List<String>> subTestSets =
-        getSubTestSets(testCases.testCases, workerJobSize, remainer);
-    // start one job for every test set
+    // start one job for every workload
     Job workerJob = null;
     Jenkins jenkinsInstance = Jenkins.getInstanceOrNull();
     if (jenkinsInstance == null) {
@@ -269,12 +337,8 @@ class TptPluginDistributingJobExecutor {
       return false;
 
     }
-    for (List<String> subTestSet : subTestSets) {
-      logger.info("Create job for \"" + subTestSet + "\"");
-
-      // creates the workloads for the worker jobs, with the smaller chunks of testsets
-      WorkLoad workloadToAdd =
-          new WorkLoad(unresolvedConfig, subTestSet, workspace, build, testDataPath, reportPath);
+    for (WorkLoad workloadToAdd : workloads) {
+      workloadToAdd.setPartialRetry(partialRetry);
       // it adds the workloads to an static HashMap.
       WorkLoad.putWorkLoad(workerJobName, workloadToAdd);
       // Creates a retryable job , there are the builds scheduled. So the logic is : We put a
@@ -302,6 +366,14 @@ class TptPluginDistributingJobExecutor {
         throw e;
       }
     }
+    // batches that failed in all tries or were given back by an interrupted worker job
+    List<String> notExecuted = new ArrayList<>();
+    failedBatches.forEach(notExecuted::addAll);
+    batches.forEach(notExecuted::addAll);
+    if (!notExecuted.isEmpty()) {
+      success = false;
+      logger.error("The test cases " + notExecuted + " could not be executed by the worker jobs.");
+    }
     // Build Overview report:
     logger.info("Building overview report.");
     boolean buildingReportWorked = tptApiAccess.runOverviewReport(tptFilePath,
@@ -309,12 +381,16 @@ class TptPluginDistributingJobExecutor {
     if (!buildingReportWorked) {
       logger.error("Building overview report did not work!");
     }
+    TPTReportModel reportModel = null;
     try {
       int foundTestData = 0;
       if (enableJunit) {
         logger.info("*** Publishing as JUnit results now ***");
-        foundTestData = Utils.publishAsJUnitResults(workspace, resolvedConfig, testDataPath,
-            jUnitXmlPath, jUnitLogLevel, logger);
+        Publish.JUnitXmlResult jUnitResult = Utils.publishAsJUnitResults(workspace,
+            resolvedConfig, testDataPath, jUnitXmlPath, jUnitLogLevel, jUnitSharding,
+            jUnitTestCasesPerFile, logger);
+        foundTestData = jUnitResult.getTestCaseCount();
+        reportModel = jUnitResult.getReportModel();
         logger.info("*** Publishing finished ***");
       } else {
         foundTestData = Publish.getTestcases(testDataPath, logger).testCases.size();
@@ -354,33 +430,12 @@ class TptPluginDistributingJobExecutor {
       logger.error("Could not publish result: " + e.getMessage());
       return false;
     }
-    return Utils.checkIdAndAddInvisibleActionTPTExecution(resolvedConfig, build, logger) & success;
-  }
-
-  private ArrayList<List<String>> getSubTestSets(Collection<String> testCases, int workerJobSize,
-                                                 int remainer) {
-    ArrayList<List<String>> testSets = new ArrayList<>();
-    ArrayList<String> currentTestSet = new ArrayList<>();
-    Iterator<String> iterator = testCases.iterator();
-    while (iterator.hasNext()) {
-      currentTestSet.add(iterator.next());
-      if (currentTestSet.size() == workerJobSize) {
-        if (remainer > 0) {
-          assert iterator.hasNext();
-          // distribute remainer evenly
-          if (iterator.hasNext()) {
-            currentTestSet.add(iterator.next());
-          }
-          remainer--;
-        }
-        testSets.add(currentTestSet);
-        currentTestSet = new ArrayList<>();
-      }
-    }
-    if (!currentTestSet.isEmpty()) {
-      testSets.add(currentTestSet);
+    boolean idValid =
+        Utils.checkIdAndAddInvisibleActionTPTExecution(resolvedConfig, build, logger);
+    if (idValid) {
+      Utils.attachReportModel(build, resolvedConfig.getId(), reportModel);
     }
-    return testSets;
+    return idValid & success;
   }
 
 }
@@ -62,6 +62,10 @@ class TptPluginSingleJobExecutor {
 
   private LogLevel jUnitLogLevel;
 
+  private JUnitSharding jUnitSharding;
+
+  private int jUnitTestCasesPerFile;
+
   private boolean enableJunit;
 
   /**
@@ -81,13 +85,18 @@ class TptPluginSingleJobExecutor {
    * @param jUnitXmlPath
    *          the path where the jUnit XML is going to be created
    * @param jUnitLogLevel
+   * @param jUnitSharding
+   *          how the JUnit results are split into several files
+   * @param jUnitTestCasesPerFile
+   *          the maximal number of test cases per JUnit file if sharded by test case count
    * @param enableJunit
    *          to know if is necessary to generate the jUnit XML
    */
   TptPluginSingleJobExecutor(Run< ? , ? > build, FilePath workspace, Launcher launcher,
                              TaskListener listener, FilePath[] exePaths, String arguments,
                              List<JenkinsConfiguration> executionConfigs, String jUnitXmlPath,
-                             LogLevel jUnitLogLevel, boolean enableJunit) {
+                             LogLevel jUnitLogLevel, JUnitSharding jUnitSharding,
+                             int jUnitTestCasesPerFile, boolean enableJunit) {
     logger = new TptLogger(listener.getLogger());
     this.launcher = launcher;
     this.build = build;
@@ -98,6 +107,8 @@ class TptPluginSingleJobExecutor {
     this.executionConfigs = executionConfigs;
     this.jUnitXmlPath = jUnitXmlPath;
     this.jUnitLogLevel = jUnitLogLevel;
+    this.jUnitSharding = jUnitSharding;
+    this.jUnitTestCasesPerFile = jUnitTestCasesPerFile;
     this.enableJunit = enableJunit;
   }
 
@@ -175,8 +186,12 @@ class TptPluginSingleJobExecutor {
           if (enableJunit) {
             // transform TPT results into JUnit results
             logger.info("*** Publishing as JUnit results now ***");
-            Utils.publishAsJUnitResults(workspace, ec, testDataPath, jUnitXmlPath, jUnitLogLevel,
+            Publish.JUnitXmlResult jUnitResult = Utils.publishAsJUnitResults(workspace, ec,
+                testDataPath, jUnitXmlPath, jUnitLogLevel, jUnitSharding, jUnitTestCasesPerFile,
                 logger);
+            if (successOnlyForOneConfig) {
+              Utils.attachReportModel(build, ec.getId(), jUnitResult.getReportModel());
+            }
             logger.info("*** Publishing finished ***");
           }
         } catch (IOException e) {
@@ -31,6 +31,7 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
 import com.piketec.jenkins.plugins.tpt.Configuration.JenkinsConfiguration;
+import com.piketec.jenkins.plugins.tpt.api.callables.TptInstanceLease;
 
 import hudson.AbortException;
 import hudson.EnvVars;
@@ -39,6 +40,7 @@ import hudson.FilePath;
 import hudson.Launcher;
 import hudson.Util;
 import hudson.model.AbstractProject;
+import hudson.model.Cause;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.tasks.BuildStepDescriptor;
@@ -62,6 +64,12 @@ public class TptPluginSlave extends Builder implements SimpleBuildStep {
 
   private String tptStartUpWaitTime;
 
+  private String tptInstancePoolSize;
+
+  private String tptInstanceIdleTimeout;
+
+  private boolean tptInstancePerExecutor = DescriptorImpl.getDefaultTptInstancePerExecutor();
+
   // ----------- Data Binding --------------
 
   /**
@@ -151,6 +159,62 @@ public class TptPluginSlave extends Builder implements SimpleBuildStep {
             : tptStartUpWaitTime;
   }
 
+  /**
+   * @return The maximum number of TPT instances in the pool on the agent. "0" if the pool is not
+   *         used.
+   */
+  public String getTptInstancePoolSize() {
+    return tptInstancePoolSize == null ? DescriptorImpl.getDefaultTptInstancePoolSize()
+        : tptInstancePoolSize;
+  }
+
+  /**
+   * @param tptInstancePoolSize
+   *          The maximum number of TPT instances in the pool on the agent
+   */
+  @DataBoundSetter
+  public void setTptInstancePoolSize(String tptInstancePoolSize) {
+    this.tptInstancePoolSize =
+        DescriptorImpl.getDefaultTptInstancePoolSize().equals(tptInstancePoolSize) ? null
+            : tptInstancePoolSize;
+  }
+
+  /**
+   * @return The time in minutes after that an unused TPT instance of the pool is closed
+   */
+  public String getTptInstanceIdleTimeout() {
+    return tptInstanceIdleTimeout == null ? DescriptorImpl.getDefaultTptInstanceIdleTimeout()
+        : tptInstanceIdleTimeout;
+  }
+
+  /**
+   * @param tptInstanceIdleTimeout
+   *          The time in minutes after that an unused TPT instance of the pool is closed
+   */
+  @DataBoundSetter
+  public void setTptInstanceIdleTimeout(String tptInstanceIdleTimeout) {
+    this.tptInstanceIdleTimeout =
+        DescriptorImpl.getDefaultTptInstanceIdleTimeout().equals(tptInstanceIdleTimeout) ? null
+            : tptInstanceIdleTimeout;
+  }
+
+  /**
+   * @return Should every executor of the agent use its own TPT instance. The port and binding name
+   *         are derived from the executor number.
+   */
+  public boolean isTptInstancePerExecutor() {
+    return tptInstancePerExecutor;
+  }
+
+  /**
+   * @param tptInstancePerExecutor
+   *          Should every executor of the agent use its own TPT instance
+   */
+  @DataBoundSetter
+  public void setTptInstancePerExecutor(boolean tptInstancePerExecutor) {
+    this.tptInstancePerExecutor = tptInstancePerExecutor;
+  }
+
   // --------------------------------------------------------------
 
   /**
@@ -210,11 +274,65 @@ public class TptPluginSlave extends Builder implements SimpleBuildStep {
     } else {
       expandedTptStartupWaitTime = Utils.DEFAULT_STARTUP_WAIT_TIME * 1000;
     }
+    int expandedPoolSize = parseInt(environment, getTptInstancePoolSize(),
+        DescriptorImpl.getDefaultTptInstancePoolSize(), "TPT instance pool size", logger);
+    if (tptInstancePerExecutor && expandedPoolSize > 0) {
+      logger.warn("The TPT instance pool is used. The TPT instance per executor setting is"
+          + " ignored because every worker job gets its own instance from the pool.");
+    } else if (tptInstancePerExecutor) {
+      int executorNumber = getExecutorNumber(environment, logger);
+      if (executorNumber > 0) {
+        expandedTptPort += executorNumber;
+        expandedTptBindingName += executorNumber;
+      }
+      logger.info("Using TPT instance " + expandedTptBindingName + "@" + expandedTptPort
+          + " for executor " + executorNumber + ".");
+    }
+    if (expandedPoolSize <= 0) {
+      execute(run, workspace, launcher, listener, environment, logger, expandedExePaths,
+          expandedArguments, expandedTptPort, expandedTptBindingName, expandedTptStartupWaitTime);
+      return;
+    }
+    int expandedIdleTimeout = parseInt(environment, getTptInstanceIdleTimeout(),
+        DescriptorImpl.getDefaultTptInstanceIdleTimeout(), "TPT instance idle timeout", logger);
+    TptApiAccess poolAccess = new TptApiAccess(launcher, logger, expandedExePaths,
+        Utils.parseCommandLine(expandedArguments), expandedTptPort, expandedTptBindingName,
+        expandedTptStartupWaitTime);
+    TptInstanceLease lease =
+        poolAccess.leaseInstance(expandedPoolSize, expandedIdleTimeout * 60000L);
+    if (lease == null) {
+      logger.error("Could not lease a TPT instance from the pool.");
+      throw new AbortException("Errors occured during TPT execution, see log for details.");
+    }
+    try {
+      execute(run, workspace, launcher, listener, environment, logger, expandedExePaths,
+          expandedArguments, lease.tptPort, lease.tptBindingName, expandedTptStartupWaitTime);
+    } finally {
+      poolAccess.releaseInstance(lease);
+    }
+  }
 
+  /**
+   * Polls the work package of this worker job and executes it with the TPT instance on the given
+   * port and binding name.
+   */
+  private void execute(Run< ? , ? > run, FilePath workspace, Launcher launcher,
+                       TaskListener listener, EnvVars environment, TptLogger logger,
+                       FilePath[] expandedExePaths, String expandedArguments, int expandedTptPort,
+                       String expandedTptBindingName, long expandedTptStartupWaitTime)
+      throws InterruptedException, IOException {
     String jobName = run.getParent().getName();
-    WorkLoad workloadToDo = WorkLoad.pollWorkload(jobName);
+    Cause.UpstreamCause upstream = run.getCause(Cause.UpstreamCause.class);
+    if (upstream == null) {
+      logger.error("Nothing todo. \"" + jobName + "\" was not started by a distributing job.");
+      throw new AbortException("Errors occured during TPT execution, see log for details.");
+    }
+    // the externalizable id of the distributing build
+    String distributingJobRunId = upstream.getUpstreamProject() + "#" + upstream.getUpstreamBuild();
+    WorkLoad workloadToDo = WorkLoad.pollWorkload(jobName, distributingJobRunId);
     if (workloadToDo == null) {
-      logger.error("Nothing todo. No work package for \"" + jobName + "\" enqueued.");
+      logger.error("Nothing todo. No work package of " + distributingJobRunId + " for \"" + jobName
+          + "\" enqueued.");
       throw new AbortException("Errors occured during TPT execution, see log for details.");
     }
 
@@ -224,6 +342,12 @@ public class TptPluginSlave extends Builder implements SimpleBuildStep {
     FilePath distributingJobWorkspace = workloadToDo.getDistributingJobWorkspace();
     FilePath distributingJobDataDir = workloadToDo.getDistributingJobDataDir();
     FilePath distributingJobReportDir = workloadToDo.getDistributingJobReportDir();
+    if (distributingJobRun == null || distributingJobWorkspace == null
+        || distributingJobDataDir == null || distributingJobReportDir == null) {
+      logger.error("The distributing job of the work package is not running anymore"
+          + " or its node is offline.");
+      throw new AbortException("Errors occured during TPT execution, see log for details.");
+    }
 
     // Replace $-Vars:
     JenkinsConfiguration resolvedConfig = unresolvedConfig.replaceAndNormalize(environment);
@@ -232,7 +356,11 @@ public class TptPluginSlave extends Builder implements SimpleBuildStep {
     logger.info("Execution Configuration : " + resolvedConfig.getConfiguration());
     logger.info("Test Data directory :     " + resolvedConfig.getTestdataDir());
     logger.info("Report directory :        " + resolvedConfig.getReportDir());
-    logger.info("Test Cases :              " + testCasesFromWorkload);
+    if (workloadToDo.isDynamic()) {
+      logger.info("Test Cases :              pulled in batches from the distributing job");
+    } else {
+      logger.info("Test Cases :              " + testCasesFromWorkload);
+    }
     if (StringUtils.isNotEmpty(unresolvedConfig.getTestSet())) {
       logger.info("Test Set :                " + resolvedConfig.getTestSet());
     }
@@ -240,14 +368,26 @@ public class TptPluginSlave extends Builder implements SimpleBuildStep {
       logger.info("Path to tpt.exe :         " + f.getRemote());
     }
 
+    InvisibleActionTPTExecutionProgress progress = new InvisibleActionTPTExecutionProgress(
+        resolvedConfig.getTptFile(), resolvedConfig.getConfiguration());
+    run.addAction(progress);
     TptPluginWorkerJobExecutor executor = new TptPluginWorkerJobExecutor(launcher, workspace,
         listener, expandedExePaths, expandedArguments, expandedTptPort, expandedTptBindingName,
         resolvedConfig, testCasesFromWorkload, expandedTptStartupWaitTime, distributingJobRun,
-        distributingJobWorkspace, distributingJobDataDir, distributingJobReportDir);
+        distributingJobWorkspace, distributingJobDataDir, distributingJobReportDir,
+        workloadToDo.isPartialRetry(), progress);
 
-    boolean result = executor.execute();
+    boolean result;
+    if (workloadToDo.isDynamic()) {
+      result = executor.executeBatches(workloadToDo);
+    } else {
+      result = executor.execute();
+    }
     if (!result) {
       // reenqueue for new try if job is configured to try multiple times
+      if (!workloadToDo.isDynamic()) {
+        workloadToDo.setTestCases(executor.getTestCasesToRetry());
+      }
       WorkLoad.putWorkLoad(jobName, workloadToDo);
       throw new AbortException();
     }
@@ -258,6 +398,35 @@ public class TptPluginSlave extends Builder implements SimpleBuildStep {
     return (DescriptorImpl)super.getDescriptor();
   }
 
+  /**
+   * @return the number of the executor the build runs on or 0 if it is unknown
+   */
+  private static int getExecutorNumber(EnvVars env, TptLogger logger) {
+    String executorNumber = env.get("EXECUTOR_NUMBER");
+    if (executorNumber == null) {
+      logger.warn("The executor number is unknown. Using the TPT instance of executor 0.");
+      return 0;
+    }
+    try {
+      return Math.max(0, Integer.parseInt(executorNumber));
+    } catch (NumberFormatException e) {
+      logger.warn("The executor number " + executorNumber
+          + " is not an integer. Using the TPT instance of executor 0.");
+      return 0;
+    }
+  }
+
+  private int parseInt(EnvVars env, String value, String defaultValue, String description,
+                       TptLogger logger) {
+    try {
+      return Integer.parseInt(expand(env, value).trim());
+    } catch (NumberFormatException e) {
+      logger.error("The given " + description + " " + expand(env, value)
+          + " is not an integer. Using default value.");
+      return Integer.parseInt(defaultValue);
+    }
+  }
+
   private String expand(@CheckForNull EnvVars env, String toExpand) {
     if (env == null) {
       return toExpand;
@@ -316,6 +485,27 @@ public class TptPluginSlave extends Builder implements SimpleBuildStep {
       return String.valueOf(Utils.DEFAULT_STARTUP_WAIT_TIME);
     }
 
+    /**
+     * @return "0" (no pool)
+     */
+    public static String getDefaultTptInstancePoolSize() {
+      return "0";
+    }
+
+    /**
+     * @return "30" (30 min)
+     */
+    public static String getDefaultTptInstanceIdleTimeout() {
+      return "30";
+    }
+
+    /**
+     * @return <code>false</code>
+     */
+    public static boolean getDefaultTptInstancePerExecutor() {
+      return false;
+    }
+
   }
 
 }
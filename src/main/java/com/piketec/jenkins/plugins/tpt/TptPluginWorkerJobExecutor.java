@@ -21,7 +21,10 @@
 package com.piketec.jenkins.plugins.tpt;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import com.piketec.jenkins.plugins.tpt.Configuration.JenkinsConfiguration;
 import com.piketec.jenkins.plugins.tpt.api.callables.CleanUpCallable;
@@ -68,6 +71,20 @@ class TptPluginWorkerJobExecutor {
 
   private JenkinsConfiguration jenkinsConfig;
 
+  private boolean partialRetry;
+
+  private InvisibleActionTPTExecutionProgress progress;
+
+  private List<String> testCasesToRetry;
+
+  private TptApiAccess tptApiAccess;
+
+  private FilePath workerReportPath;
+
+  private FilePath workerDataPath;
+
+  private FilePath tptFilePath;
+
   /**
    * @param launcher
    *          passed for executing a process
@@ -99,13 +116,18 @@ class TptPluginWorkerJobExecutor {
    *          the name of the test set if given
    * @param distributingJobWorkspace
    *          the workspace from the distributing job, to know where to copy the results
+   * @param partialRetry
+   *          if only the test cases without result should be retried if the execution fails
+   * @param progress
+   *          shows the progress of the executions on the build page
    */
   TptPluginWorkerJobExecutor(Launcher launcher, FilePath workspace, TaskListener listener,
                              FilePath[] exePaths, String arguments, int tptPort,
                              String tptBindingName, JenkinsConfiguration jenkinsConfig,
                              List<String> testSet, long tptStartupWaitTime,
                              Run< ? , ? > distributingJobRun, FilePath distributingJobWorkspace,
-                             FilePath distributingJobDataPath, FilePath distributingJobReportPath) {
+                             FilePath distributingJobDataPath, FilePath distributingJobReportPath,
+                             boolean partialRetry, InvisibleActionTPTExecutionProgress progress) {
     this.logger = new TptLogger(listener.getLogger());
     this.launcher = launcher;
     this.workspace = workspace;
@@ -121,6 +143,9 @@ class TptPluginWorkerJobExecutor {
     this.distributingJobWorkspace = distributingJobWorkspace;
     this.distributingJobDataPath = distributingJobDataPath;
     this.distributingJobReportPath = distributingJobReportPath;
+    this.partialRetry = partialRetry;
+    this.progress = progress;
+    this.testCasesToRetry = testSet;
   }
 
   /**
@@ -134,22 +159,87 @@ class TptPluginWorkerJobExecutor {
    *           If thread was interrupted
    */
   public boolean execute() throws InterruptedException {
-    TptApiAccess tptApiAccess = new TptApiAccess(launcher, logger, exePaths,
-        Utils.parseCommandLine(arguments), tptPort, tptBindingName, tptStartupWaitTime);
+    if (!prepare()) {
+      return false;
+    }
+    return executeTestCases(testSetList);
+  }
+
+  /**
+   * Executes the batches of test cases of a dynamic workload. The batches are pulled one after
+   * another from the queue shared with the other worker jobs until the queue is drained. All
+   * batches are executed with the same TPT instance. A batch that could not be executed is retried
+   * right away until the configured number of tries is reached. Other worker jobs might already be
+   * finished, so nobody else would take it. Then it is reported as failed to the distributing job.
+   * 
+   * @param workload
+   *          the dynamic workload to pull the batches from
+   * @return true if all batches have been executed successfully.
+   * @throws InterruptedException
+   *           If thread was interrupted
+   */
+  public boolean executeBatches(WorkLoad workload) throws InterruptedException {
+    if (!prepare()) {
+      return false;
+    }
+    boolean success = true;
+    List<String> batch;
+    while ((batch = workload.pollBatch()) != null) {
+      List<String> testCases = batch;
+      int tries = 0;
+      progress.startBatch();
+      try {
+        while (true) {
+          tries++;
+          logger.info("Executing test cases " + testCases);
+          if (executeTestCases(testCases)) {
+            break;
+          }
+          if (tries >= workload.getBatchTries()) {
+            logger.error("Execution of test cases " + testCasesToRetry + " failed.");
+            workload.failBatch(testCasesToRetry);
+            success = false;
+            break;
+          }
+          logger.info("Execution failed. Retrying test cases " + testCasesToRetry + ".");
+          progress.startRetry(batch.size() - testCasesToRetry.size());
+          testCases = testCasesToRetry;
+        }
+      } catch (InterruptedException e) {
+        // give the unfinished work back, so the other worker jobs can take it
+        workload.returnBatch(testCases);
+        throw e;
+      }
+    }
+    return success;
+  }
 
+  /**
+   * Binds to the Tpt Api and registers the clean up task that closes the TPT project in the end.
+   */
+  private boolean prepare() {
     if (workspace == null) {
       logger.error("No workspace available");
       return false;
     }
-    FilePath workerReportPath = new FilePath(workspace, Utils.getGeneratedReportDir(jenkinsConfig));
-    FilePath workerDataPath = new FilePath(workspace, Utils.getGeneratedTestDataDir(jenkinsConfig));
-    FilePath tptFilePath = new FilePath(workspace, jenkinsConfig.getTptFile());
+    tptApiAccess = new TptApiAccess(launcher, logger, exePaths, Utils.parseCommandLine(arguments),
+        tptPort, tptBindingName, tptStartupWaitTime);
+    workerReportPath = new FilePath(workspace, Utils.getGeneratedReportDir(jenkinsConfig));
+    workerDataPath = new FilePath(workspace, Utils.getGeneratedTestDataDir(jenkinsConfig));
+    tptFilePath = new FilePath(workspace, jenkinsConfig.getTptFile());
 
     // Register cleanup task that is called in the end to close remote TPT Project
     CleanUpCallable cleanUpCallable = new CleanUpCallable(listener, "localhost", tptPort,
         tptBindingName, exePaths, tptStartupWaitTime, tptFilePath);
     new CleanUpTask(distributingJobRun, cleanUpCallable, launcher);
+    return true;
+  }
 
+  /**
+   * Prepares the test- and data-directories, executes the given test cases and copies the results
+   * to the distributing job's workspace.
+   */
+  private boolean executeTestCases(List<String> testCases) throws InterruptedException {
     // Clean and setup the report and testdata directoires
     try {
       if (!distributingJobWorkspace.equals(workspace)) {
@@ -174,12 +264,25 @@ class TptPluginWorkerJobExecutor {
     // Execute Tests on worker:
     boolean executionResult =
         tptApiAccess.executeTestsOnWorker(tptFilePath, jenkinsConfig.getConfiguration(),
-            jenkinsConfig.getTestSet(), workerReportPath, workerDataPath, testSetList);
+            jenkinsConfig.getTestSet(), workerReportPath, workerDataPath, testCases, progress);
+    testCasesToRetry = testCases;
+    if (!executionResult && partialRetry) {
+      // the missing results only decide what is retried, the execution stays failed
+      List<String> withoutResult = getTestCasesWithoutResult(testCases);
+      if (withoutResult.isEmpty()) {
+        logger.warn("The execution reported errors, but all test cases produced results."
+            + " A retry executes all test cases again.");
+      } else {
+        testCasesToRetry = withoutResult;
+        logger.info((testCases.size() - testCasesToRetry.size()) + " of " + testCases.size()
+            + " test cases produced results. Only " + testCasesToRetry + " will be retried.");
+      }
+    }
 
     // Copy tpt-testresults back to distributing job, so the distributing job can build the report
     try {
-      Utils.copyRecursive(workerDataPath, distributingJobDataPath, logger);
-      Utils.copyRecursive(workerReportPath, distributingJobReportPath, logger);
+      Utils.copyRecursiveArchived(workerDataPath, distributingJobDataPath, logger);
+      Utils.copyRecursiveArchived(workerReportPath, distributingJobReportPath, logger);
       logger.info("Copied all data to distributing job from file " + tptFilePath.getName() + " to "
           + distributingJobWorkspace.getRemote());
     } catch (IOException e) {
@@ -187,4 +290,44 @@ class TptPluginWorkerJobExecutor {
     }
     return executionResult;
   }
+
+  /**
+   * @return the test cases that have to be executed again if the last execution failed. If
+   *         partial retry is enabled these are only the test cases that did not produce a result.
+   */
+  List<String> getTestCasesToRetry() {
+    return testCasesToRetry;
+  }
+
+  /**
+   * Searches the test data of the worker for the results of the given test cases.
+   * 
+   * @return the test cases that produced no result or that could not be executed
+   */
+  private List<String> getTestCasesWithoutResult(List<String> testCases)
+      throws InterruptedException {
+    Set<String> executed = new HashSet<>();
+    Set<String> failed = new HashSet<>();
+    List<Testcase> results;
+    try {
+      results = Publish.getTestcaseInformation(workerDataPath, logger);
+    } catch (IOException e) {
+      logger.error("Could not search for test results: " + e.getMessage());
+      return testCases;
+    }
+    for (Testcase tc : results) {
+      if (tc.getResult() == TptResult.EXECUTION_ERROR) {
+        failed.add(tc.getName());
+      } else {
+        executed.add(tc.getName());
+      }
+    }
+    List<String> result = new ArrayList<>();
+    for (String testCase : testCases) {
+      if (!executed.contains(testCase) || failed.contains(testCase)) {
+        result.add(testCase);
+      }
+    }
+    return result;
+  }
 }
@@ -22,26 +22,38 @@ package com.piketec.jenkins.plugins.tpt;
 
 import java.io.File;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
+import javax.annotation.CheckForNull;
+
+import org.apache.commons.io.FilenameUtils;
 import org.apache.tools.ant.types.Commandline;
 
 import com.piketec.jenkins.plugins.tpt.TptLog.LogLevel;
 import com.piketec.jenkins.plugins.tpt.Configuration.JenkinsConfiguration;
+import com.piketec.jenkins.plugins.tpt.publisher.TPTReportModel;
 
 import hudson.EnvVars;
 import hudson.FilePath;
+import hudson.FilePath.TarCompression;
 import hudson.Launcher;
 import hudson.model.AbstractBuild;
+import hudson.model.Computer;
 import hudson.model.Run;
+import hudson.util.DirScanner;
 import jenkins.model.Jenkins;
 
 /**
@@ -73,7 +85,11 @@ public class Utils {
 
   static final int DEFAULT_STARTUP_WAIT_TIME = 60;
 
-  private static final SimpleDateFormat DDMMYYHHMMSS = new SimpleDateFormat("dd.MM.yy HH:mm:ss");
+  private static final DateTimeFormatter DDMMYYHHMMSS =
+      DateTimeFormatter.ofPattern("dd.MM.yy HH:mm:ss");
+
+  // the log prefix only changes once per second, so the last formatted second is reused
+  private static volatile FormattedSecond lastLogDate = new FormattedSecond(Long.MIN_VALUE, "");
 
   private static final Pattern illegalWindowsFileNameCharacters =
       Pattern.compile("[<>:\"/\\\\|?*]|\\R");
@@ -86,18 +102,39 @@ public class Utils {
    * @return the current date. Used for the logs
    */
   static String getCurrentDateString() {
-    Date date = new Date(); // acquire date before waiting for lock
-    return formatDate(DDMMYYHHMMSS, date);
+    return getDateString(System.currentTimeMillis());
+  }
+
+  /**
+   * @param millis
+   *          milliseconds since epoch
+   * @return the date formatted for the logs
+   */
+  static String getDateString(long millis) {
+    long second = Math.floorDiv(millis, 1000);
+    FormattedSecond last = lastLogDate;
+    if (last.second != second) {
+      // concurrent callers may format the same second twice, that's cheaper than locking
+      String text =
+          DDMMYYHHMMSS.format(Instant.ofEpochSecond(second).atZone(ZoneId.systemDefault()));
+      last = new FormattedSecond(second, text);
+      lastLogDate = last;
+    }
+    return last.text;
   }
 
   /**
-   * @param format
-   * @param date
-   * @return formatted date
+   * A second since epoch and its formatted representation for the log prefix
    */
-  static String formatDate(DateFormat format, Date date) {
-    synchronized (format) {
-      return format.format(date);
+  private static final class FormattedSecond {
+
+    final long second;
+
+    final String text;
+
+    FormattedSecond(long second, String text) {
+      this.second = second;
+      this.text = text;
     }
   }
 
@@ -152,7 +189,8 @@ public class Utils {
   /**
    * Publishes the Junit XML , it creates the folder for the XML and then it publishes the XML by
    * calling Publish.publishJUnitResults,
-   * {@link Publish#publishJUnitResults(JenkinsConfiguration, FilePath, FilePath, TptLogger, LogLevel)
+   * {@link Publish#publishJUnitResults(JenkinsConfiguration, FilePath, FilePath, TptLogger,
+   * LogLevel, JUnitSharding, int)
    * Publish.publishJUnitResults}. This method is used as a wrapper.
    * 
    * @param workspace
@@ -165,18 +203,25 @@ public class Utils {
    *          The directory where the transformed results should be written to.
    * @param jUnitLogLevel
    *          the threshold for the severity of the log messages
+   * @param sharding
+   *          How the test cases are split into several files
+   * @param testCasesPerFile
+   *          The maximal number of test cases per file if sharded by test case count
    * @param logger
    *          To display messages
-   * @return the number of test cases in the Junit XML
+   * @return the number of test cases in the Junit XML and the content for the TPT report
    * @throws IOException
    *           If an IO exception occured while parsing the TPT test results or while writing the
    *           JUnit xml files
    * @throws InterruptedException
    *           If the job is cancelled
    */
-  static int publishAsJUnitResults(FilePath workspace, JenkinsConfiguration jenkinsConfiguration,
-                                   FilePath testDataDir, String jUnitXml, LogLevel jUnitLogLevel,
-                                   TptLogger logger)
+  static Publish.JUnitXmlResult publishAsJUnitResults(FilePath workspace,
+                                                      JenkinsConfiguration jenkinsConfiguration,
+                                                      FilePath testDataDir, String jUnitXml,
+                                                      LogLevel jUnitLogLevel,
+                                                      JUnitSharding sharding,
+                                                      int testCasesPerFile, TptLogger logger)
       throws IOException, InterruptedException {
     FilePath reportPath = ((jUnitXml == null) || jUnitXml.trim().isEmpty()) ? workspace
         : new FilePath(workspace, jUnitXml);
@@ -186,8 +231,35 @@ public class Utils {
         throw new IOException("Could not create report directory \"" + reportPath + "\"");
       }
     }
+    // the TPT report publisher gets its data from the same pass over the test data
+    TPTReportModel reportModel = new TPTReportModel(
+        FilenameUtils.getBaseName(jenkinsConfiguration.getTptFile()),
+        jenkinsConfiguration.getConfiguration(), jenkinsConfiguration.getId(),
+        testDataDir.getRemote(),
+        new FilePath(workspace, getGeneratedReportDir(jenkinsConfiguration)).getRemote());
     return Publish.publishJUnitResults(jenkinsConfiguration, testDataDir, reportPath, logger,
-        jUnitLogLevel);
+        jUnitLogLevel, sharding, testCasesPerFile, reportModel);
+  }
+
+  /**
+   * Hands the TPT report content collected while the JUnit results were created to the TPT report
+   * publisher.
+   * 
+   * @param build
+   *          The build that executed the configuration
+   * @param id
+   *          The ID of the executed configuration
+   * @param reportModel
+   *          The collected report content, may be <code>null</code>
+   */
+  static void attachReportModel(Run< ? , ? > build, String id,
+                                @CheckForNull TPTReportModel reportModel) {
+    for (InvisibleActionTPTExecution action : build
+        .getActions(InvisibleActionTPTExecution.class)) {
+      if (action.getId().equals(id)) {
+        action.setReportModel(reportModel);
+      }
+    }
   }
 
   /**
@@ -352,6 +424,85 @@ public class Utils {
     }
   }
 
+  /**
+   * Copies the content of a directory as one compressed tar stream. Unlike
+   * {@link #copyRecursive(FilePath, FilePath, TptLogger)} the number of remote calls does not
+   * depend on the number of files: The files are packed on the source machine and unpacked on the
+   * target machine. If both paths are on different agents the stream is passed through the
+   * controller, because {@link FilePath#copyRecursiveTo} can only copy between the controller and
+   * one agent (JENKINS-2126). If the stream transfer fails the files are copied one by one.
+   * 
+   * @param from
+   *          Source path
+   * @param to
+   *          Target path
+   * @param logger
+   *          for dumping messages
+   * @throws IOException
+   *           If an IO error occurs
+   * @throws InterruptedException
+   *           If thread was interrupted
+   */
+  public static void copyRecursiveArchived(FilePath from, FilePath to, TptLogger logger)
+      throws IOException, InterruptedException {
+    if (from.equals(to)) {
+      return;
+    }
+    if (!from.isDirectory()) {
+      logger.error(from.getRemote() + " does not exist or is not a directory!");
+      return;
+    }
+    try {
+      to.mkdirs();
+      if (from.getChannel() == to.getChannel() || !from.isRemote() || !to.isRemote()) {
+        from.copyRecursiveTo(new DirScanner.Full(), to, from.getRemote(), TarCompression.GZIP);
+      } else {
+        copyBetweenAgents(from, to);
+      }
+    } catch (IOException e) {
+      logger.warn("Could not transfer " + from.getRemote() + " as archive, copying file by file: "
+          + e.getMessage());
+      copyRecursive(from, to, logger);
+    }
+  }
+
+  /**
+   * Packs the source directory on its agent and unpacks the stream on the agent of the target.
+   */
+  private static void copyBetweenAgents(FilePath from, FilePath to)
+      throws IOException, InterruptedException {
+    PipedOutputStream pipeOut = new PipedOutputStream();
+    PipedInputStream pipeIn = new PipedInputStream(pipeOut, 64 * 1024);
+    Future<Integer> packing = Computer.threadPoolForRemoting.submit(() -> {
+      try (OutputStream out = TarCompression.GZIP.compress(pipeOut)) {
+        return from.tar(out, new DirScanner.Full());
+      }
+    });
+    try (PipedInputStream in = pipeIn) {
+      to.untarFrom(in, TarCompression.GZIP);
+    } catch (IOException | InterruptedException | RuntimeException e) {
+      // otherwise the packing might block on the full pipe
+      if (!packing.cancel(true)) {
+        // already finished, its failure might be the reason why the unpacking failed
+        try {
+          packing.get();
+        } catch (ExecutionException packingFailure) {
+          e.addSuppressed(packingFailure.getCause());
+        }
+      }
+      throw e;
+    }
+    try {
+      packing.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
   /**
    * Checks if name does not contain a lien break, &lt;, &gt;, :, \, ", /, \, |, ?, * nor matches
    * any of the reserved names CON, PRN, AUX, NUL, COM1, COM2, COM3, COM4, COM5, COM6, COM7, COM8,
@@ -371,6 +522,19 @@ public class Utils {
     return true;
   }
 
+  /**
+   * Replaces line breaks and the characters &lt;, &gt;, :, \, ", /, \, |, ?, * by "_". Reserved
+   * names get a leading "_".
+   * 
+   * @param name
+   *          The name to escape
+   * @return a name that can be used as a windows file name
+   */
+  public static String toValidWindowsFileName(String name) {
+    String escaped = illegalWindowsFileNameCharacters.matcher(name).replaceAll("_");
+    return isValidWidnowsFileName(escaped) ? escaped : "_" + escaped;
+  }
+
   /**
    * Get the environment variables for a build. In pipeline all strings should be handled as
    * litereals and replacing is dones by Groovy so we do not accept {@link Run} here.
@@ -20,40 +20,83 @@
  */
 package com.piketec.jenkins.plugins.tpt;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
 
 import com.piketec.jenkins.plugins.tpt.Configuration.JenkinsConfiguration;
 
 import hudson.FilePath;
+import hudson.Util;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Computer;
+import hudson.model.Node;
 import hudson.model.Run;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.Jenkins;
 
 /**
  * Through this class is how the data from a distributing job to a worker job is passed. A way to
  * tell the worker job what testcases should be executed.
  * 
+ * The registry of enqueued workloads is kept in one lock-free queue per worker job. A worker build
+ * only takes workloads of the distributing build that triggered it. The registry is not persisted:
+ * A distributing build does not survive a restart of Jenkins, so nobody would collect the results
+ * of a recovered workload. Worker builds that are still queued after the restart find no work
+ * package and fail.
+ * 
  * @author FInfantino, Synopsys Inc.
  */
 public class WorkLoad {
 
-  private static HashMap<String, LinkedList<WorkLoad>> workloads = new HashMap<>();
+  private static final Logger LOGGER = Logger.getLogger(WorkLoad.class.getName());
+
+  private static final ConcurrentHashMap<String, Queue<WorkLoad>> workloads =
+      new ConcurrentHashMap<>();
 
   private List<String> testCases;
 
-  private Run< ? , ? > distributingJobRun;
+  @CheckForNull
+  private Queue<List<String>> batches;
+
+  @CheckForNull
+  private Queue<List<String>> failedBatches;
+
+  private int batchTries = 1;
+
+  private String distributingJobRunId;
 
-  private FilePath distributingJobWorkspace;
+  private String distributingJobNode;
 
-  private FilePath distributingJobDataDir;
+  private String distributingJobWorkspacePath;
 
-  private FilePath distributingJobReportDir;
+  private String distributingJobDataDirPath;
+
+  private String distributingJobReportDirPath;
 
   private JenkinsConfiguration jenkinsConfig;
 
+  private boolean partialRetry;
+
+  private transient Run< ? , ? > distributingJobRun;
+
+  private transient FilePath distributingJobWorkspace;
+
+  private transient FilePath distributingJobDataDir;
+
+  private transient FilePath distributingJobReportDir;
+
   /**
    * @param unresolvedConfig
    *          JenkinsConfiguration that contains paths and tpt file names with unresolved $-vars
@@ -77,6 +120,44 @@ public class WorkLoad {
     this.distributingJobWorkspace = distributingJobWorkspace;
     this.distributingJobDataDir = distributingJobDataDir;
     this.distributingJobReportDir = distributingJobReportDir;
+    this.distributingJobRunId = distributingJobRun.getExternalizableId();
+    Computer computer = distributingJobWorkspace.toComputer();
+    this.distributingJobNode = computer == null ? "" : computer.getName();
+    this.distributingJobWorkspacePath = distributingJobWorkspace.getRemote();
+    this.distributingJobDataDirPath = distributingJobDataDir.getRemote();
+    this.distributingJobReportDirPath = distributingJobReportDir.getRemote();
+  }
+
+  /**
+   * Creates a workload for the dynamic distribution mode. All workloads of a distributing job share
+   * the same queue of test case batches and every worker job pulls batches from the queue until it
+   * is drained.
+   * 
+   * @param unresolvedConfig
+   *          JenkinsConfiguration that contains paths and tpt file names with unresolved $-vars
+   * @param batches
+   *          the thread safe queue of test case batches, shared by all workloads of the
+   *          distributing job
+   * @param failedBatches
+   *          the thread safe queue the batches that failed in all tries are put to, shared by all
+   *          workloads of the distributing job
+   * @param distributingJobWorkspace
+   *          the workspace from the distributing job, used for knowing where to copy the results
+   * @param distributingJobRun
+   *          the current build, used in order to get an unique id
+   * @param distributingJobDataDir
+   *          The test data directory of the distributing job
+   * @param distributingJobReportDir
+   *          The report directory the distributing job
+   */
+  public WorkLoad(JenkinsConfiguration unresolvedConfig, Queue<List<String>> batches,
+                  Queue<List<String>> failedBatches, FilePath distributingJobWorkspace,
+                  Run< ? , ? > distributingJobRun, FilePath distributingJobDataDir,
+                  FilePath distributingJobReportDir) {
+    this(unresolvedConfig, Collections.emptyList(), distributingJobWorkspace, distributingJobRun,
+        distributingJobDataDir, distributingJobReportDir);
+    this.batches = batches;
+    this.failedBatches = failedBatches;
   }
 
   /**
@@ -94,67 +175,196 @@ public class WorkLoad {
   }
 
   /**
-   * @return the workspace from the distributing job
+   * @param testCases
+   *          the test cases that should be executed by the next try of the worker
+   */
+  public void setTestCases(List<String> testCases) {
+    this.testCases = testCases;
+  }
+
+  /**
+   * @return <code>true</code> if a retry should only execute the test cases that produced no result
+   *         in the failed try
+   */
+  public boolean isPartialRetry() {
+    return partialRetry;
+  }
+
+  /**
+   * @param partialRetry
+   *          <code>true</code> if a retry should only execute the test cases that produced no
+   *          result in the failed try
    */
+  public void setPartialRetry(boolean partialRetry) {
+    this.partialRetry = partialRetry;
+  }
+
+  /**
+   * @return <code>true</code> if the test cases are not fixed but pulled batch by batch from a
+   *         queue shared with the other workloads of the distributing job
+   */
+  public boolean isDynamic() {
+    return batches != null;
+  }
+
+  /**
+   * Takes the next batch of test cases from the shared queue.
+   * 
+   * @return the next batch of test cases, <code>null</code> if the queue is drained or this is not
+   *         a dynamic workload
+   */
+  @CheckForNull
+  public List<String> pollBatch() {
+    if (batches == null) {
+      return null;
+    }
+    return batches.poll();
+  }
+
+  /**
+   * Puts a batch of test cases back to the shared queue, e.g. because the worker job was
+   * interrupted and another worker job should execute it.
+   * 
+   * @param batch
+   *          the batch of test cases
+   */
+  public void returnBatch(List<String> batch) {
+    if (batches != null) {
+      batches.offer(batch);
+    }
+  }
+
+  /**
+   * Reports a batch of test cases that could not be executed in any of the tries to the
+   * distributing job.
+   * 
+   * @param batch
+   *          the batch of test cases
+   */
+  public void failBatch(List<String> batch) {
+    if (failedBatches != null) {
+      failedBatches.offer(batch);
+    }
+  }
+
+  /**
+   * @return how often a worker job tries to execute a batch of test cases before it is failed
+   */
+  public int getBatchTries() {
+    return batchTries;
+  }
+
+  /**
+   * @param batchTries
+   *          how often a worker job tries to execute a batch of test cases before it is failed
+   */
+  public void setBatchTries(int batchTries) {
+    this.batchTries = Math.max(1, batchTries);
+  }
+
+  /**
+   * @return the workspace from the distributing job, <code>null</code> if the node of the
+   *         distributing job is not online
+   */
+  @CheckForNull
   public FilePath getDistributingJobWorkspace() {
+    if (distributingJobWorkspace == null) {
+      distributingJobWorkspace = toFilePath(distributingJobWorkspacePath);
+    }
     return distributingJobWorkspace;
   }
 
   /**
-   * @return the current build, used to get an unique Id
+   * @return the current build, used to get an unique Id. <code>null</code> if the build does not
+   *         exist anymore.
    */
+  @CheckForNull
   public Run< ? , ? > getDistributingJobRun() {
+    if (distributingJobRun == null) {
+      // the authentication of the worker job might not be allowed to see the distributing job
+      try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+        distributingJobRun = Run.fromExternalizableId(distributingJobRunId);
+      } catch (IllegalArgumentException e) {
+        LOGGER.log(Level.WARNING, "Invalid build id " + distributingJobRunId, e);
+      }
+    }
     return distributingJobRun;
   }
 
   /**
-   * @return the path to the data directory of the distributing job
+   * @return the path to the data directory of the distributing job, <code>null</code> if the node
+   *         of the distributing job is not online
    */
+  @CheckForNull
   public FilePath getDistributingJobDataDir() {
+    if (distributingJobDataDir == null) {
+      distributingJobDataDir = toFilePath(distributingJobDataDirPath);
+    }
     return this.distributingJobDataDir;
   }
 
   /**
-   * @return the path to the report directory of the distributing job
+   * @return the path to the report directory of the distributing job, <code>null</code> if the
+   *         node of the distributing job is not online
    */
+  @CheckForNull
   public FilePath getDistributingJobReportDir() {
+    if (distributingJobReportDir == null) {
+      distributingJobReportDir = toFilePath(distributingJobReportDirPath);
+    }
     return this.distributingJobReportDir;
   }
 
+  @CheckForNull
+  private FilePath toFilePath(String remote) {
+    Jenkins jenkins = Jenkins.getInstanceOrNull();
+    if (jenkins == null) {
+      return null;
+    }
+    Node node = distributingJobNode.isEmpty() ? jenkins : jenkins.getNode(distributingJobNode);
+    return node == null ? null : node.createPath(remote);
+  }
+
   /**
-   * Adds a workload to the static HashMap. This method is used when the distributing job put the
-   * workload here and then triggers the worker job.
+   * Adds a workload to the queue of the worker job. This method is used when the distributing job
+   * put the workload here and then triggers the worker job.
    * 
    * @param jobName
    *          The name of the jenkins job serving as a worker.
    * @param workloadToAdd
    *          The work package to be executed by the worker job
    */
-  public static synchronized void putWorkLoad(String jobName, WorkLoad workloadToAdd) {
-    LinkedList<WorkLoad> queue = workloads.get(jobName);
-    if (queue == null) {
-      queue = new LinkedList<>();
-      workloads.put(jobName, queue);
-    }
+  public static void putWorkLoad(String jobName, WorkLoad workloadToAdd) {
+    Queue<WorkLoad> queue = workloads.computeIfAbsent(jobName, k -> new ConcurrentLinkedQueue<>());
     if (!queue.contains(workloadToAdd)) {
       queue.offer(workloadToAdd);
     }
   }
 
   /**
-   * Pops the workload from the static HashMap. This method is used from the worker when a build has
-   * been triggered and it needs to do some workload.
+   * Pops the oldest workload of the given distributing build from the queue of the worker job. This
+   * method is used from the worker when a build has been triggered and it needs to do some
+   * workload.
    * 
    * @param jobName
    *          The name of the jenkins job serving as a worker job.
+   * @param distributingJobRunId
+   *          The externalizable id of the distributing build that triggered the worker build
    * @return the workload that has been removed, null if there is nothing to remove.
    */
-  public static synchronized WorkLoad pollWorkload(String jobName) {
+  @CheckForNull
+  public static WorkLoad pollWorkload(String jobName, String distributingJobRunId) {
     Queue<WorkLoad> queue = workloads.get(jobName);
-    if (queue == null || queue.isEmpty()) {
+    if (queue == null) {
       return null;
     }
-    return queue.poll();
+    for (WorkLoad workload : queue) {
+      // another worker build of the same distributing build might have taken it meanwhile
+      if (workload.distributingJobRunId.equals(distributingJobRunId) && queue.remove(workload)) {
+        return workload;
+      }
+    }
+    return null;
   }
 
   /**
@@ -166,20 +376,33 @@ public class WorkLoad {
    * @param distributingJobRun
    *          the build of the distributing job
    */
-  public static synchronized void clean(String jobName, Run< ? , ? > distributingJobRun) {
-    LinkedList<WorkLoad> queue = workloads.get(jobName);
+  public static void clean(String jobName, Run< ? , ? > distributingJobRun) {
+    Queue<WorkLoad> queue = workloads.get(jobName);
     if (queue == null) {
       return;
     }
-    Iterator<WorkLoad> iterator = queue.iterator();
-    while (iterator.hasNext()) {
-      WorkLoad next = iterator.next();
-      if (Objects.equals(next.distributingJobRun, distributingJobRun)) {
-        iterator.remove();
-      }
+    String runId = distributingJobRun.getExternalizableId();
+    queue.removeIf(w -> Objects.equals(w.distributingJobRunId, runId));
+  }
+
+  /**
+   * Deletes the workloads persisted by earlier versions of the plugin. They belong to distributing
+   * builds that did not survive the restart.
+   */
+  @Initializer(after = InitMilestone.JOB_LOADED)
+  public static void deleteStaleWorkloads() {
+    Jenkins jenkins = Jenkins.getInstanceOrNull();
+    if (jenkins == null) {
+      return;
+    }
+    File dir = new File(jenkins.getRootDir(), "piketec-tpt/workloads");
+    if (!dir.exists()) {
+      return;
     }
-    if (queue.isEmpty()) {
-      workloads.remove(jobName);
+    try {
+      Util.deleteRecursive(dir);
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Could not delete stale workloads in " + dir, e);
     }
   }
 
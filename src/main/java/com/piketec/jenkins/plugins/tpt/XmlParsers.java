@@ -0,0 +1,181 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2018 Synopsys Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.piketec.jenkins.plugins.tpt;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import jenkins.util.SystemProperties;
+
+/**
+ * Shared SAX parsing for the TPT result files (test_summary.xml, testcase_information.xml). The
+ * parser factory is created once and every thread reuses its own parser, so parsing thousands of
+ * files does not repeat the service lookup and parser construction for every file.
+ * <p>
+ * By default the parsers run in a fast mode without namespace processing, validation and loading
+ * of external DTDs. The TPT files need none of it. It can be switched off with the system property
+ * <code>com.piketec.jenkins.plugins.tpt.XmlParsers.fastMode=false</code>.
+ */
+public final class XmlParsers {
+
+  static final boolean FAST_MODE =
+      SystemProperties.getBoolean(XmlParsers.class.getName() + ".fastMode", true);
+
+  private static final SAXParserFactory FACTORY = createFactory(FAST_MODE);
+
+  private static final ThreadLocal<SAXParser> PARSERS = new ThreadLocal<>();
+
+  private XmlParsers() {
+  }
+
+  /**
+   * Parses the given stream with a parser of the current thread.
+   * 
+   * @param inputStream
+   *          The XML content, will not be closed
+   * @param handler
+   *          The handler that receives the SAX events
+   * @throws IOException
+   *           If the stream could not be read
+   * @throws SAXException
+   *           If the content is no valid XML or the handler rejected it
+   * @throws ParserConfigurationException
+   *           If no parser could be created
+   */
+  public static void parse(InputStream inputStream, DefaultHandler handler)
+      throws IOException, SAXException, ParserConfigurationException {
+    // taken from the thread local while in use, so a nested parse call gets its own parser
+    SAXParser parser = PARSERS.get();
+    if (parser == null) {
+      parser = newParser();
+    } else {
+      PARSERS.remove();
+    }
+    try {
+      parser.parse(inputStream, handler);
+    } finally {
+      parser.reset();
+      PARSERS.set(parser);
+    }
+  }
+
+  /**
+   * Creates a handler that forwards all element events to the given handlers, so one pass over a
+   * file can feed several handlers.
+   * 
+   * @param handlers
+   *          The handlers to forward to, in this order
+   * @return The combined handler
+   */
+  public static DefaultHandler tee(DefaultHandler... handlers) {
+    return new TeeHandler(handlers.clone());
+  }
+
+  private static SAXParser newParser() throws ParserConfigurationException, SAXException {
+    // the factory itself is not guaranteed to be thread safe
+    synchronized (FACTORY) {
+      return FACTORY.newSAXParser();
+    }
+  }
+
+  private static SAXParserFactory createFactory(boolean fastMode) {
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    if (fastMode) {
+      factory.setNamespaceAware(false);
+      factory.setValidating(false);
+      factory.setXIncludeAware(false);
+      setFeature(factory, "http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+      setFeature(factory, "http://xml.org/sax/features/external-general-entities", false);
+      setFeature(factory, "http://xml.org/sax/features/external-parameter-entities", false);
+      setFeature(factory, XMLConstants.FEATURE_SECURE_PROCESSING, true);
+    }
+    return factory;
+  }
+
+  /**
+   * Forwards the document, element and character events to several handlers
+   */
+  private static final class TeeHandler extends DefaultHandler {
+
+    private final DefaultHandler[] handlers;
+
+    TeeHandler(DefaultHandler[] handlers) {
+      this.handlers = handlers;
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+      for (DefaultHandler handler : handlers) {
+        handler.startDocument();
+      }
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+      for (DefaultHandler handler : handlers) {
+        handler.endDocument();
+      }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes)
+        throws SAXException {
+      for (DefaultHandler handler : handlers) {
+        handler.startElement(uri, localName, qName, attributes);
+      }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+      for (DefaultHandler handler : handlers) {
+        handler.endElement(uri, localName, qName);
+      }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+      for (DefaultHandler handler : handlers) {
+        handler.characters(ch, start, length);
+      }
+    }
+  }
+
+  private static void setFeature(SAXParserFactory factory, String feature, boolean value) {
+    try {
+      factory.setFeature(feature, value);
+    } catch (ParserConfigurationException | SAXNotRecognizedException
+        | SAXNotSupportedException e) {
+      // NOP, parser implementation does not know the feature. Parsing still works, just slower.
+    }
+  }
+
+}
@@ -21,6 +21,7 @@
 package com.piketec.jenkins.plugins.tpt;
 
 import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -32,7 +33,11 @@ import javax.xml.stream.XMLStreamWriter;
 import hudson.FilePath;
 import javanet.staxutils.IndentingXMLStreamWriter;
 
-class XmlStreamWriter {
+class XmlStreamWriter implements Closeable {
+
+  private static final int HIGH_THROUGHPUT_BUFFER_SIZE = 64 * 1024;
+
+  private final boolean highThroughput;
 
   private XMLStreamWriter writer;
 
@@ -40,6 +45,23 @@ class XmlStreamWriter {
 
   private BufferedOutputStream bos;
 
+  /**
+   * Creates a writer with indented output that is flushed after every test case.
+   */
+  XmlStreamWriter() {
+    this(false);
+  }
+
+  /**
+   * @param highThroughput
+   *          If <code>true</code> the output is not indented, written through a large buffer and
+   *          only flushed when the writer is closed. Use this mode if the file is written on the
+   *          machine it is located on, e.g. from a callable on the agent.
+   */
+  XmlStreamWriter(boolean highThroughput) {
+    this.highThroughput = highThroughput;
+  }
+
   /**
    * Used by Publish.publishJUnitResults, write the XML file.
    * 
@@ -57,9 +79,14 @@ class XmlStreamWriter {
   public void initalize(FilePath file)
       throws XMLStreamException, FactoryConfigurationError, IOException, InterruptedException {
     os = file.write();
-    bos = new BufferedOutputStream(os);
-    writer = new IndentingXMLStreamWriter(
-        XMLOutputFactory.newInstance().createXMLStreamWriter(bos, "UTF-8"));
+    if (highThroughput) {
+      bos = new BufferedOutputStream(os, HIGH_THROUGHPUT_BUFFER_SIZE);
+      writer = XMLOutputFactory.newInstance().createXMLStreamWriter(bos, "UTF-8");
+    } else {
+      bos = new BufferedOutputStream(os);
+      writer = new IndentingXMLStreamWriter(
+          XMLOutputFactory.newInstance().createXMLStreamWriter(bos, "UTF-8"));
+    }
     writer.writeStartDocument("UTF-8", "1.0");
   }
 
@@ -74,7 +101,7 @@ class XmlStreamWriter {
   public void writeTestsuite(String name) throws XMLStreamException {
     writer.writeStartElement("testsuite");
     writer.writeAttribute("name", name);
-    writer.flush();
+    flush();
   }
 
   /**
@@ -93,7 +120,7 @@ class XmlStreamWriter {
     writer.writeAttribute("name", tc.getQualifiedName());
     writer.writeAttribute("time", millis2secs(tc.getExecDuration()));
     writer.writeEndElement();
-    writer.flush();
+    flush();
   }
 
   /**
@@ -117,9 +144,19 @@ class XmlStreamWriter {
     writer.writeStartElement("error");
     writer.writeAttribute("message", error);
     writer.writeEndElement();
-    writer.flush();
+    flush();
     writer.writeEndElement();
-    writer.flush();
+    flush();
+  }
+
+  /**
+   * Flushes the written elements to the file. Does nothing in high throughput mode, there the
+   * output is only flushed once on close.
+   */
+  private void flush() throws XMLStreamException {
+    if (!highThroughput) {
+      writer.flush();
+    }
   }
 
   /**
@@ -160,21 +197,22 @@ class XmlStreamWriter {
 
   /**
    * Writes the end element and closes the file.
+   * 
+   * @throws IOException
+   *           if the end of the XML or the buffered output could not be written. The file is
+   *           incomplete then.
    */
-  public void close() {
+  @Override
+  public void close() throws IOException {
     if (writer != null) {
-      try {
+      // closing the buffered stream also closes the file
+      try (OutputStream out = bos) {
         writer.writeEndElement();
-        writer.flush();
         writer.writeEndDocument();
         writer.flush();
         writer.close();
-        bos.close();
-        os.close();
-      } catch (XMLStreamException xe) {
-        xe.printStackTrace();
-      } catch (IOException e) {
-        e.printStackTrace();
+      } catch (XMLStreamException e) {
+        throw new IOException("XML stream error: " + e.getMessage(), e);
       } finally {
         writer = null;
         bos = null;
@@ -7,6 +7,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import javax.annotation.CheckForNull;
+
 import org.apache.commons.lang.StringUtils;
 
 import com.piketec.jenkins.plugins.tpt.TptApiHelper;
@@ -45,6 +47,9 @@ public class ExecuteTestsWorkerJobCallable extends TptApiCallable<Boolean> {
 
   private String testSetName;
 
+  @CheckForNull
+  private ExecutionProgressListener progressListener;
+
   /**
    * Create a new callable to execute a subset of tests of a given test set as part of a complete
    * test execution.
@@ -73,13 +78,17 @@ public class ExecuteTestsWorkerJobCallable extends TptApiCallable<Boolean> {
    *          List of test cases to executes
    * @param testSetName
    *          The test set to execute
+   * @param progressListener
+   *          receives the progress of the execution, already exported to the agent. May be
+   *          <code>null</code>.
    */
   public ExecuteTestsWorkerJobCallable(TaskListener listener, int tptPort, String tptBindingName,
                                        FilePath[] exePaths, List<String> arguments,
                                        long startUpWaitTime, FilePath tptFilePath,
                                        FilePath workerJobReportPath, FilePath workerJobDataPath,
                                        String executionConfigName, List<String> testSet,
-                                       String testSetName) {
+                                       String testSetName,
+                                       @CheckForNull ExecutionProgressListener progressListener) {
     super(listener, tptPort, tptBindingName, exePaths, arguments, startUpWaitTime);
     this.tptFilePath = tptFilePath;
     this.workerJobReportPath = workerJobReportPath;
@@ -87,6 +96,7 @@ public class ExecuteTestsWorkerJobCallable extends TptApiCallable<Boolean> {
     this.execCfg = executionConfigName;
     this.testSetList = testSet;
     this.testSetName = testSetName;
+    this.progressListener = progressListener;
   }
 
   @Override
@@ -194,9 +204,7 @@ public class ExecuteTestsWorkerJobCallable extends TptApiCallable<Boolean> {
       // execute test
       ExecutionStatus execStatus = api.run(config);
       try {
-        while (execStatus.isRunning() || execStatus.isPending()) {
-          Thread.sleep(1000);
-        }
+        waitForExecution(execStatus, logger, progressListener);
       } catch (InterruptedException e) {
         logger.interrupt(e.getMessage());
         execStatus.cancel();
@@ -0,0 +1,23 @@
+package com.piketec.jenkins.plugins.tpt.api.callables;
+
+import hudson.remoting.Asynchronous;
+
+/**
+ * Receives the progress of a TPT execution that runs on a Jenkins Agent. An implementation on the
+ * Jenkins controller has to be exported via {@link hudson.remoting.VirtualChannel#export} before it
+ * is handed to a callable, so the calls are sent back through the channel.
+ */
+public interface ExecutionProgressListener {
+
+  /**
+   * Called every time the number of executed test cases changes and when the execution is done.
+   * 
+   * @param executed
+   *          The number of test cases that are already executed
+   * @param total
+   *          The number of test cases of the execution
+   */
+  @Asynchronous
+  void progress(int executed, int total);
+
+}
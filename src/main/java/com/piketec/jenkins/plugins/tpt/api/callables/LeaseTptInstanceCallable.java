@@ -0,0 +1,72 @@
+package com.piketec.jenkins.plugins.tpt.api.callables;
+
+import java.util.List;
+
+import hudson.FilePath;
+import hudson.model.TaskListener;
+
+/**
+ * Leases a TPT instance from the pool of pre-started TPT instances on the Jenkins Agent. The
+ * instances of the pool use the given port and binding name, the second one the port + 1 and the
+ * binding name with suffix "1" and so on. If all instances are leased and the pool has reached its
+ * maximum size the call waits until another worker job releases an instance.
+ */
+public class LeaseTptInstanceCallable extends TptApiCallable<TptInstanceLease> {
+
+  private static final long serialVersionUID = 1L;
+
+  private String leaseId;
+
+  private int maxInstances;
+
+  private long idleTimeout;
+
+  /**
+   * @param listener
+   *          The task listener
+   * @param tptPort
+   *          The port of the first TPT instance of the pool
+   * @param tptBindingName
+   *          The binding name of the first TPT instance of the pool
+   * @param exePaths
+   *          Paths to look for TPT installations
+   * @param arguments
+   *          startup arguments fo TPT
+   * @param startUpWaitTime
+   *          Time to wait for TPT start up
+   * @param leaseId
+   *          Unique id of the lease, used to release the instance even if the lease is not granted
+   *          yet
+   * @param maxInstances
+   *          The maximum number of TPT instances in the pool
+   * @param idleTimeout
+   *          The time in milliseconds after that an unused TPT instance is closed
+   */
+  public LeaseTptInstanceCallable(TaskListener listener, int tptPort, String tptBindingName,
+                                  FilePath[] exePaths, List<String> arguments,
+                                  long startUpWaitTime, String leaseId, int maxInstances,
+                                  long idleTimeout) {
+    super(listener, tptPort, tptBindingName, exePaths, arguments, startUpWaitTime);
+    this.leaseId = leaseId;
+    this.maxInstances = maxInstances;
+    this.idleTimeout = idleTimeout;
+  }
+
+  @Override
+  public TptInstanceLease call() throws InterruptedException {
+    return TptInstancePool.get(getTptPort(), getTptBindingName()).lease(this);
+  }
+
+  String getLeaseId() {
+    return leaseId;
+  }
+
+  int getMaxInstances() {
+    return maxInstances;
+  }
+
+  long getIdleTimeout() {
+    return idleTimeout;
+  }
+
+}
@@ -0,0 +1,41 @@
+package com.piketec.jenkins.plugins.tpt.api.callables;
+
+import jenkins.security.MasterToSlaveCallable;
+
+/**
+ * Gives a TPT instance leased with {@link LeaseTptInstanceCallable} back to the pool on the Jenkins
+ * Agent. The instance keeps running, so the next worker job can use it without starting TPT. If the
+ * lease is not granted yet, it is cancelled.
+ */
+public class ReleaseTptInstanceCallable
+    extends MasterToSlaveCallable<Boolean, InterruptedException> {
+
+  private static final long serialVersionUID = 1L;
+
+  private int poolTptPort;
+
+  private String poolTptBindingName;
+
+  private String leaseId;
+
+  /**
+   * @param poolTptPort
+   *          The port of the first TPT instance of the pool
+   * @param poolTptBindingName
+   *          The binding name of the first TPT instance of the pool
+   * @param leaseId
+   *          The id of the lease
+   */
+  public ReleaseTptInstanceCallable(int poolTptPort, String poolTptBindingName,
+                                    String leaseId) {
+    this.poolTptPort = poolTptPort;
+    this.poolTptBindingName = poolTptBindingName;
+    this.leaseId = leaseId;
+  }
+
+  @Override
+  public Boolean call() {
+    return TptInstancePool.get(poolTptPort, poolTptBindingName).release(leaseId);
+  }
+
+}
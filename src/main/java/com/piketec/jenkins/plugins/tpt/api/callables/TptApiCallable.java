@@ -23,6 +23,7 @@ import com.piketec.jenkins.plugins.tpt.TptLogger;
 import com.piketec.jenkins.plugins.tpt.Utils;
 import com.piketec.tpt.api.ApiException;
 import com.piketec.tpt.api.ExecutionConfiguration;
+import com.piketec.tpt.api.ExecutionStatus;
 import com.piketec.tpt.api.OpenResult;
 import com.piketec.tpt.api.Project;
 import com.piketec.tpt.api.TptApi;
@@ -44,6 +45,10 @@ public abstract class TptApiCallable<S> extends MasterToSlaveCallable<S, Interru
 
   private static final long serialVersionUID = 1L;
 
+  private static final int MIN_JOIN_TIMEOUT = 1;
+
+  private static final int MAX_JOIN_TIMEOUT = 10;
+
   private TaskListener listener;
 
   private int tptPort;
@@ -66,6 +71,20 @@ public abstract class TptApiCallable<S> extends MasterToSlaveCallable<S, Interru
     this.startUpWaitTime = startUpWaitTime;
   }
 
+  /**
+   * @return The port of the RMI registry given in the constructor
+   */
+  int getTptPort() {
+    return tptPort;
+  }
+
+  /**
+   * @return The RMI binding name given in the constructor
+   */
+  String getTptBindingName() {
+    return tptBindingName;
+  }
+
   /**
    * @return a logger that prints its log messages live on the Jenkins Agent
    */
@@ -82,22 +101,33 @@ public abstract class TptApiCallable<S> extends MasterToSlaveCallable<S, Interru
    *           If thread was interrupted
    */
   protected @Nullable TptApi getApi() throws InterruptedException {
-    TptLogger logger = getLogger();
-    logger.info("Try to connect to " + getHostName() + ":" + tptPort);
-    logger.info("TPT Binding name: " + tptBindingName);
-    TptApi api = getApiIfTptIsOpen();
+    return getApi(tptPort, tptBindingName, getLogger());
+  }
+
+  /**
+   * Starts TPT if necessary and returns a TPT API connection for the given port and binding name.
+   * 
+   * @return the handle to the api
+   * @throws InterruptedException
+   *           If thread was interrupted
+   */
+  @Nullable
+  TptApi getApi(int port, String bindingName, TptLogger logger) throws InterruptedException {
+    logger.info("Try to connect to " + getHostName() + ":" + port);
+    logger.info("TPT Binding name: " + bindingName);
+    TptApi api = getApiIfTptIsOpen(port, bindingName, logger);
     if (api != null) {
       return api;
     }
     logger.info("TPT is not running with the needed settings.");
     // start TPT and try again
-    api = startTpt(startUpWaitTime);
+    api = startTpt(port, bindingName, logger);
     if (api == null) {
       logger.error("Could not start TPT");
       return null;
     }
     try {
-      return waitForTPTToBeReadyAndPrintVersion(api);
+      return cache(port, bindingName, waitForTPTToBeReadyAndPrintVersion(api, logger));
     } catch (RemoteException e) {
       logger.error("Could not connect to TPT API: " + e.getMessage());
       return null;
@@ -105,32 +135,52 @@ public abstract class TptApiCallable<S> extends MasterToSlaveCallable<S, Interru
   }
 
   /**
-   * Only returns the TPT API if TPT is already running. Otherwise it returns null.
+   * Only returns the TPT API if TPT is already running. Otherwise it returns null. A connection
+   * established by an earlier callable on this agent is reused if TPT still answers.
    * 
    * @return the handle to the api
    */
   protected @CheckForNull TptApi getApiIfTptIsOpen() {
+    return getApiIfTptIsOpen(tptPort, tptBindingName, getLogger());
+  }
+
+  private @CheckForNull TptApi getApiIfTptIsOpen(int port, String bindingName, TptLogger logger) {
+    TptApi cached = TptApiConnections.get(getHostName(), port, bindingName);
+    if (cached != null) {
+      logger.info("Reusing existing connection to TPT API.");
+      return cached;
+    }
     try {
-      return waitForTPTToBeReadyAndPrintVersion(getTptApi());
+      return cache(port, bindingName,
+          waitForTPTToBeReadyAndPrintVersion(getTptApi(port, bindingName), logger));
     } catch (RemoteException | NotBoundException e) {
       // That's fine, TPT is not running.
       return null;
     }
   }
 
-  private String getHostName() {
+  private static @CheckForNull TptApi cache(int port, String bindingName,
+                                            @CheckForNull TptApi api) {
+    if (api != null) {
+      TptApiConnections.put(getHostName(), port, bindingName, api);
+    }
+    return api;
+  }
+
+  static String getHostName() {
     String hostName = System.getenv("HOSTNAME");
     return hostName == null ? "localhost" : hostName;
   }
 
-  private TptApi getTptApi() throws RemoteException, NotBoundException, AccessException {
-    Registry registry = LocateRegistry.getRegistry(getHostName(), tptPort);
-    return (TptApi)registry.lookup(tptBindingName);
+  static TptApi getTptApi(int port, String bindingName)
+      throws RemoteException, NotBoundException, AccessException {
+    Registry registry = LocateRegistry.getRegistry(getHostName(), port);
+    return (TptApi)registry.lookup(bindingName);
   }
 
-  private TptApi waitForTPTToBeReadyAndPrintVersion(TptApi remoteApi) throws RemoteException {
-    TptLogger logger = getLogger();
-    if (!waitForTPTToBeReady(remoteApi)) {
+  private static TptApi waitForTPTToBeReadyAndPrintVersion(TptApi remoteApi, TptLogger logger)
+      throws RemoteException {
+    if (!waitForTPTToBeReady(remoteApi, logger)) {
       return null;
     }
     try {
@@ -142,8 +192,8 @@ public abstract class TptApiCallable<S> extends MasterToSlaveCallable<S, Interru
     return remoteApi;
   }
 
-  private boolean waitForTPTToBeReady(TptApi remoteApi) throws RemoteException {
-    TptLogger logger = getLogger();
+  private static boolean waitForTPTToBeReady(TptApi remoteApi, TptLogger logger)
+      throws RemoteException {
     if (remoteApi.isReady()) {
       return true;
     }
@@ -166,8 +216,8 @@ public abstract class TptApiCallable<S> extends MasterToSlaveCallable<S, Interru
   }
 
   @CheckForNull
-  private TptApi startTpt(long startupWaitTime) throws InterruptedException {
-    TptLogger logger = getLogger();
+  private TptApi startTpt(int port, String bindingName, TptLogger logger)
+      throws InterruptedException {
     FilePath exeFile = null;
     for (FilePath f : exePaths) {
       try {
@@ -197,9 +247,9 @@ public abstract class TptApiCallable<S> extends MasterToSlaveCallable<S, Interru
     if (SystemUtils.IS_OS_LINUX) {
       cmd.add(exeFile.getRemote());
       cmd.add("--apiPort");
-      cmd.add(Integer.toString(tptPort));
+      cmd.add(Integer.toString(port));
       cmd.add("--apiBindingName");
-      cmd.add(tptBindingName);
+      cmd.add(bindingName);
       cmd.add("--run");
       cmd.add("apiserver");
       cmd.add("--headless");
@@ -208,13 +258,13 @@ public abstract class TptApiCallable<S> extends MasterToSlaveCallable<S, Interru
     } else {
       cmd.add(exeFile.getRemote());
       cmd.add("--apiPort");
-      cmd.add(Integer.toString(tptPort));
+      cmd.add(Integer.toString(port));
       cmd.add("--apiBindingName");
-      cmd.add(tptBindingName);
+      cmd.add(bindingName);
       cmd.addAll(arguments);
       builder = new ProcessBuilder(cmd);
     }
-    logger.info("Waiting at most " + startupWaitTime / 1000 + "s for TPT to start.");
+    logger.info("Waiting at most " + startUpWaitTime / 1000 + "s for TPT to start.");
     TPTProcessOutputReaderThread outputThread = null;
     TPTProcessOutputReaderThread errorThread = null;
     try {
@@ -226,15 +276,15 @@ public abstract class TptApiCallable<S> extends MasterToSlaveCallable<S, Interru
       return null;
     }
     try {
-      long waitEndTime = System.currentTimeMillis() + startupWaitTime;
+      long waitEndTime = System.currentTimeMillis() + startUpWaitTime;
       TptApi remoteApi = null;
       while (remoteApi == null) {
         try {
-          remoteApi = getTptApi();
+          remoteApi = getTptApi(port, bindingName);
         } catch (RemoteException | NotBoundException e) {
           if (System.currentTimeMillis() > waitEndTime) {
             logger.error(
-                "Timeout: Could not connect to TPT API within " + (startupWaitTime / 1000) + "s.");
+                "Timeout: Could not connect to TPT API within " + (startUpWaitTime / 1000) + "s.");
             return null;
           }
           // that's fine, TPT is not yet ready
@@ -325,6 +375,58 @@ public abstract class TptApiCallable<S> extends MasterToSlaveCallable<S, Interru
     return null;
   }
 
+  /**
+   * Waits for the given execution to finish. The end of the execution is detected by
+   * {@link ExecutionStatus#join(int)} as soon as it happens. The join timeout only determines how
+   * often the progress is reported: It starts at 1s and is doubled up to 10s as long as no test
+   * case finishes.
+   * 
+   * @param execStatus
+   *          The status of the execution to wait for
+   * @param logger
+   *          to display the progress
+   * @param progressListener
+   *          receives the progress as well, may be <code>null</code>
+   * @throws InterruptedException
+   *           If thread was interrupted
+   */
+  void waitForExecution(ExecutionStatus execStatus, TptLogger logger,
+                        @CheckForNull ExecutionProgressListener progressListener)
+      throws RemoteException, ApiException, InterruptedException {
+    int timeout = MIN_JOIN_TIMEOUT;
+    int lastPending = -1;
+    while (true) {
+      long joinEnd = System.currentTimeMillis() + timeout * 1000L;
+      execStatus.join(timeout);
+      if (Thread.interrupted()) {
+        throw new InterruptedException("Interrupted while waiting for the execution to finish.");
+      }
+      boolean finished = !execStatus.isRunning() && !execStatus.isPending();
+      int pending = execStatus.getNumberOfPendingTestCases();
+      if (pending != lastPending) {
+        int total = execStatus.getNumberOfAllTestCases();
+        if (total > 0) {
+          logger.info("Executed " + (total - pending) + " of " + total + " test cases.");
+        }
+        if (progressListener != null) {
+          progressListener.progress(total - pending, total);
+        }
+        lastPending = pending;
+        timeout = MIN_JOIN_TIMEOUT;
+      } else {
+        timeout = Math.min(timeout * 2, MAX_JOIN_TIMEOUT);
+      }
+      if (finished) {
+        return;
+      }
+      // join() also returns if the execution is paused, do not ask TPT in a busy loop then
+      long rest = joinEnd - System.currentTimeMillis();
+      if (rest > 0) {
+        Thread.sleep(rest);
+      }
+    }
+  }
+
   /**
    * Reads the error and output stream to avoid hanging due to stream congestion. Will forward
    * output to {@link TptLogger} until unset.
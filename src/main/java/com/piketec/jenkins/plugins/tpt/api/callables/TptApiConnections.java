@@ -0,0 +1,111 @@
+package com.piketec.jenkins.plugins.tpt.api.callables;
+
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckForNull;
+
+import com.piketec.tpt.api.TptApi;
+
+import jenkins.util.SystemProperties;
+
+/**
+ * Cache of TPT API connections in the JVM of a Jenkins Agent. The callables are executed one after
+ * another on the same agent, so instead of looking up the RMI registry for every callable the
+ * remote {@link TptApi} stub of the last lookup is reused as long as TPT answers. A stub that
+ * throws a {@link RemoteException} (e.g. because TPT was closed or restarted) or that was not used
+ * for a while is evicted.
+ */
+final class TptApiConnections {
+
+  private static final long IDLE_TIMEOUT = SystemProperties.getLong(
+      TptApiConnections.class.getName() + ".idleTimeout", TimeUnit.MINUTES.toMillis(30));
+
+  private static final Map<String, Connection> CONNECTIONS = new ConcurrentHashMap<>();
+
+  private TptApiConnections() {
+  }
+
+  /**
+   * Returns the cached connection if TPT is still alive and ready.
+   *
+   * @param hostName
+   *          The host of the RMI registry
+   * @param port
+   *          The port of the RMI registry
+   * @param bindingName
+   *          The binding name of the TPT API
+   * @return the cached api or <code>null</code> if there is none or it is not usable
+   */
+  @CheckForNull
+  static TptApi get(String hostName, int port, String bindingName) {
+    long now = System.currentTimeMillis();
+    CONNECTIONS.values().removeIf(c -> now - c.lastUsed > IDLE_TIMEOUT);
+    String key = key(hostName, port, bindingName);
+    Connection connection = CONNECTIONS.get(key);
+    if (connection == null) {
+      return null;
+    }
+    try {
+      if (!connection.api.isReady()) {
+        // TPT is alive but busy, let the caller wait for it
+        return null;
+      }
+    } catch (RemoteException e) {
+      // stale stub, TPT was closed or restarted
+      CONNECTIONS.remove(key, connection);
+      return null;
+    }
+    connection.lastUsed = now;
+    return connection.api;
+  }
+
+  /**
+   * Remembers a connection that was just established and is ready.
+   *
+   * @param hostName
+   *          The host of the RMI registry
+   * @param port
+   *          The port of the RMI registry
+   * @param bindingName
+   *          The binding name of the TPT API
+   * @param api
+   *          The connection
+   */
+  static void put(String hostName, int port, String bindingName, TptApi api) {
+    CONNECTIONS.put(key(hostName, port, bindingName), new Connection(api));
+  }
+
+  /**
+   * Forgets the connection, e.g. because the TPT instance was closed.
+   *
+   * @param hostName
+   *          The host of the RMI registry
+   * @param port
+   *          The port of the RMI registry
+   * @param bindingName
+   *          The binding name of the TPT API
+   */
+  static void remove(String hostName, int port, String bindingName) {
+    CONNECTIONS.remove(key(hostName, port, bindingName));
+  }
+
+  private static String key(String hostName, int port, String bindingName) {
+    return hostName + ":" + port + "/" + bindingName;
+  }
+
+  private static final class Connection {
+
+    private final TptApi api;
+
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    Connection(TptApi api) {
+      this.api = api;
+    }
+
+  }
+
+}
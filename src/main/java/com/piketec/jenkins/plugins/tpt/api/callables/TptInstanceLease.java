@@ -0,0 +1,35 @@
+package com.piketec.jenkins.plugins.tpt.api.callables;
+
+import java.io.Serializable;
+
+/**
+ * Data container for the result returned by {@link LeaseTptInstanceCallable}. Identifies the TPT
+ * instance of the pool on the agent that was leased. The instance has to be given back with
+ * {@link ReleaseTptInstanceCallable}.
+ */
+public class TptInstanceLease implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The id of the lease.
+   */
+  public final String leaseId;
+
+  /**
+   * The port of the RMI registry of the leased TPT instance.
+   */
+  public final int tptPort;
+
+  /**
+   * The RMI binding name of the leased TPT instance.
+   */
+  public final String tptBindingName;
+
+  TptInstanceLease(String leaseId, int tptPort, String tptBindingName) {
+    this.leaseId = leaseId;
+    this.tptPort = tptPort;
+    this.tptBindingName = tptBindingName;
+  }
+
+}
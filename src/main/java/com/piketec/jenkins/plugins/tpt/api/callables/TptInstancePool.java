@@ -0,0 +1,356 @@
+package com.piketec.jenkins.plugins.tpt.api.callables;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+
+import com.piketec.jenkins.plugins.tpt.TptLogger;
+
+import hudson.remoting.Channel;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Pool of headless TPT instances in the JVM of a Jenkins Agent. Every instance runs on its own
+ * port and binding name, so several worker jobs on the same agent never share a TPT process. A
+ * released instance keeps running, so the next worker job does not have to wait for the start up
+ * of TPT. As long as the pool is not full, one unused instance is started in the background as a
+ * warm spare. Instances that were not used for the idle timeout are closed.
+ * 
+ * Every lease has an id chosen by the controller. If the controller gives up a lease request (e.g.
+ * because the build was aborted) it releases the id, even if the instance is not leased yet. If the
+ * channel to the controller is closed all instances leased through it are released.
+ */
+final class TptInstancePool {
+
+  private static final Logger LOGGER = Logger.getLogger(TptInstancePool.class.getName());
+
+  private static final long IDLE_CHECK_PERIOD = TimeUnit.MINUTES.toMillis(1);
+
+  private static final long CANCELLED_LEASE_TIMEOUT = TimeUnit.HOURS.toMillis(1);
+
+  private static final Map<String, TptInstancePool> POOLS = new HashMap<>();
+
+  private static final ScheduledExecutorService IDLE_CHECK =
+      Executors.newSingleThreadScheduledExecutor(
+          new NamingThreadFactory(new DaemonThreadFactory(), "TPT instance pool idle check"));
+
+  private static final ExecutorService SPARE_START = Executors.newCachedThreadPool(
+      new NamingThreadFactory(new DaemonThreadFactory(), "TPT instance pool spare start"));
+
+  // the output of a spare instance is not shown in any build log
+  private static final TptLogger SILENT =
+      new TptLogger(new PrintStream(OutputStream.nullOutputStream()));
+
+  private final int basePort;
+
+  private final String baseBindingName;
+
+  private final List<Instance> instances = new ArrayList<>();
+
+  // lease ids that were released before the lease was granted, value is the time of the release
+  private final Map<String, Long> cancelledLeases = new HashMap<>();
+
+  private final Set<Channel> observedChannels = new HashSet<>();
+
+  private long idleTimeout;
+
+  private TptInstancePool(int basePort, String baseBindingName) {
+    this.basePort = basePort;
+    this.baseBindingName = baseBindingName;
+  }
+
+  /**
+   * @param basePort
+   *          The port of the first TPT instance of the pool
+   * @param baseBindingName
+   *          The binding name of the first TPT instance of the pool
+   * @return the pool for the given settings
+   */
+  static synchronized TptInstancePool get(int basePort, String baseBindingName) {
+    return POOLS.computeIfAbsent(basePort + "/" + baseBindingName, key -> {
+      TptInstancePool pool = new TptInstancePool(basePort, baseBindingName);
+      IDLE_CHECK.scheduleWithFixedDelay(pool::closeIdleInstances, IDLE_CHECK_PERIOD,
+          IDLE_CHECK_PERIOD, TimeUnit.MILLISECONDS);
+      return pool;
+    });
+  }
+
+  /**
+   * Leases a free instance of the pool. Starts TPT if the instance is not running yet. Waits if all
+   * instances are leased and the pool has reached its maximum size.
+   *
+   * @param callable
+   *          The callable that requested the lease. Provides the pool settings and is used to start
+   *          TPT.
+   * @return the leased instance or <code>null</code> if TPT could not be started
+   * @throws InterruptedException
+   *           If thread was interrupted
+   */
+  @CheckForNull
+  TptInstanceLease lease(LeaseTptInstanceCallable callable) throws InterruptedException {
+    TptLogger logger = callable.getLogger();
+    String leaseId = callable.getLeaseId();
+    int maxInstances = Math.max(1, callable.getMaxInstances());
+    Channel channel = Channel.current();
+    Instance instance;
+    boolean ownStartUp = false;
+    synchronized (this) {
+      idleTimeout = callable.getIdleTimeout();
+      boolean waitingLogged = false;
+      while (true) {
+        if (cancelledLeases.remove(leaseId) != null
+            || (channel != null && channel.isClosingOrClosed())) {
+          return null;
+        }
+        instance = nextFreeInstance();
+        if (instance == null && instances.size() < maxInstances) {
+          instance = new Instance(nextSlot());
+          instances.add(instance);
+          ownStartUp = true;
+        }
+        if (instance != null) {
+          break;
+        }
+        if (!waitingLogged) {
+          logger.info("All " + maxInstances + " TPT instances of the pool are in use."
+              + " Waiting for a free instance.");
+          waitingLogged = true;
+        }
+        wait();
+      }
+      instance.leaseId = leaseId;
+      instance.channel = channel;
+      observe(channel);
+    }
+    logger.info("Leased TPT instance " + instance);
+    boolean started = false;
+    try {
+      if (!ownStartUp) {
+        instance.startUp.await();
+      }
+      started = callable.getApi(instance.port, instance.bindingName, logger) != null;
+    } finally {
+      if (ownStartUp) {
+        instance.startUp.countDown();
+      }
+      if (!started) {
+        discardUnlessLeased(instance, leaseId);
+      }
+    }
+    synchronized (this) {
+      if (!started || !leaseId.equals(instance.leaseId)) {
+        // TPT could not be started or the lease was released while TPT was started
+        return null;
+      }
+    }
+    startSpare(callable, maxInstances);
+    return new TptInstanceLease(leaseId, instance.port, instance.bindingName);
+  }
+
+  /**
+   * Gives a leased instance back to the pool. If the lease was not granted yet, it is cancelled.
+   *
+   * @param leaseId
+   *          The id of the lease
+   * @return <code>true</code> if an instance was leased with the given id
+   */
+  synchronized boolean release(String leaseId) {
+    for (Instance instance : instances) {
+      if (leaseId.equals(instance.leaseId)) {
+        free(instance);
+        return true;
+      }
+    }
+    cancelledLeases.put(leaseId, System.currentTimeMillis());
+    notifyAll();
+    return false;
+  }
+
+  private void free(Instance instance) {
+    instance.leaseId = null;
+    instance.channel = null;
+    instance.lastUsed = System.currentTimeMillis();
+    notifyAll();
+  }
+
+  /**
+   * Registers a listener that releases all instances leased through the channel when it is closed.
+   */
+  private void observe(@CheckForNull Channel channel) {
+    if (channel != null && observedChannels.add(channel)) {
+      channel.addListener(new Channel.Listener() {
+
+        @Override
+        public void onClosed(Channel closed, IOException cause) {
+          releaseAll(closed);
+        }
+
+      });
+    }
+  }
+
+  private synchronized void releaseAll(Channel channel) {
+    observedChannels.remove(channel);
+    for (Instance instance : instances) {
+      if (instance.channel == channel) {
+        LOGGER.log(Level.INFO, "Released TPT instance {0} because the channel was closed",
+            instance);
+        free(instance);
+      }
+    }
+    // wakes up the leases that are still waiting for this channel
+    notifyAll();
+  }
+
+  /**
+   * Prefers instances that are already started over spare instances that are still starting.
+   */
+  @CheckForNull
+  private Instance nextFreeInstance() {
+    Instance starting = null;
+    for (Instance instance : instances) {
+      if (instance.leaseId == null) {
+        if (instance.startUp.getCount() == 0) {
+          return instance;
+        }
+        starting = instance;
+      }
+    }
+    return starting;
+  }
+
+  private int nextSlot() {
+    int slot = 0;
+    while (true) {
+      boolean used = false;
+      for (Instance instance : instances) {
+        used |= instance.port == basePort + slot;
+      }
+      if (!used) {
+        return slot;
+      }
+      slot++;
+    }
+  }
+
+  private void startSpare(LeaseTptInstanceCallable callable, int maxInstances) {
+    Instance spare;
+    synchronized (this) {
+      if (instances.size() >= maxInstances) {
+        return;
+      }
+      for (Instance instance : instances) {
+        if (instance.leaseId == null) {
+          return;
+        }
+      }
+      spare = new Instance(nextSlot());
+      instances.add(spare);
+    }
+    callable.getLogger().info("Starting spare TPT instance " + spare + " in the background.");
+    SPARE_START.execute(() -> {
+      try {
+        if (callable.getApi(spare.port, spare.bindingName, SILENT) == null) {
+          discardIfFree(spare);
+        }
+      } catch (InterruptedException e) {
+        discardIfFree(spare);
+      } finally {
+        spare.startUp.countDown();
+      }
+    });
+  }
+
+  private synchronized void discard(Instance instance) {
+    instances.remove(instance);
+    notifyAll();
+  }
+
+  private void discardIfFree(Instance instance) {
+    // a worker job already waits for the spare and will start TPT itself
+    discardUnlessLeased(instance, null);
+  }
+
+  private synchronized void discardUnlessLeased(Instance instance, @CheckForNull String leaseId) {
+    if (instance.leaseId == null || instance.leaseId.equals(leaseId)) {
+      discard(instance);
+    }
+  }
+
+  private void closeIdleInstances() {
+    List<Instance> idle = new ArrayList<>();
+    synchronized (this) {
+      if (idleTimeout <= 0) {
+        return;
+      }
+      long now = System.currentTimeMillis();
+      cancelledLeases.values().removeIf(time -> now - time > CANCELLED_LEASE_TIMEOUT);
+      for (Iterator<Instance> it = instances.iterator(); it.hasNext();) {
+        Instance instance = it.next();
+        if (instance.leaseId == null && instance.startUp.getCount() == 0
+            && now - instance.lastUsed > idleTimeout) {
+          idle.add(instance);
+          it.remove();
+        }
+      }
+    }
+    for (Instance instance : idle) {
+      LOGGER.log(Level.INFO, "Closing idle TPT instance {0}", instance);
+      TptApiConnections.remove(TptApiCallable.getHostName(), instance.port, instance.bindingName);
+      try {
+        TptApiCallable.getTptApi(instance.port, instance.bindingName).closeTpt();
+      } catch (RemoteException | NotBoundException e) {
+        // NOP, TPT is already closed
+      }
+    }
+  }
+
+  private final class Instance {
+
+    private final int port;
+
+    private final String bindingName;
+
+    // counted down when the first start up of TPT is completed
+    private final CountDownLatch startUp = new CountDownLatch(1);
+
+    @CheckForNull
+    private String leaseId;
+
+    @CheckForNull
+    private Channel channel;
+
+    private long lastUsed = System.currentTimeMillis();
+
+    Instance(int slot) {
+      this.port = basePort + slot;
+      this.bindingName = slot == 0 ? baseBindingName : baseBindingName + slot;
+    }
+
+    @Override
+    public String toString() {
+      return bindingName + "@" + port;
+    }
+
+  }
+
+}
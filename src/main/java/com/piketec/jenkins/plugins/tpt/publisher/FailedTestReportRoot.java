@@ -0,0 +1,229 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2018 Synopsys Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.piketec.jenkins.plugins.tpt.publisher;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jenkins.util.VirtualFile;
+
+/**
+ * The root directory of a report with an additional index file that only exists in memory. Used
+ * to show a report with the page of a failed test case in the right frame without writing the
+ * index file to the report directory. The rendered index files are cached, keyed by the report and
+ * the page of the failed test case.
+ */
+final class FailedTestReportRoot extends VirtualFile {
+
+  /**
+   * The name of the index file that shows the page of the failed test case
+   */
+  static final String INDEX_FILE_NAME = "failedTest.html";
+
+  private static final Cache<String, byte[]> RENDERED = CacheBuilder.newBuilder()
+      .maximumWeight(16 * 1024 * 1024).weigher((String key, byte[] value) -> value.length)
+      .expireAfterAccess(30, TimeUnit.MINUTES).build();
+
+  private final VirtualFile base;
+
+  private final String indexFileName;
+
+  private final byte[] indexContent;
+
+  private final long indexLastModified;
+
+  private FailedTestReportRoot(VirtualFile base, String indexFileName, byte[] indexContent,
+                               long indexLastModified) {
+    this.base = base;
+    this.indexFileName = indexFileName;
+    this.indexContent = indexContent;
+    this.indexLastModified = indexLastModified;
+  }
+
+  /**
+   * Creates the root directory with the index file {@link #INDEX_FILE_NAME}. It is the
+   * "index.html" of the report with the overview page replaced by the given page.
+   * 
+   * @param base
+   *          The root directory of the report
+   * @param reportFile
+   *          The page of the failed test case, relative to the root directory
+   * @return The root directory with the additional index file
+   * @throws IOException
+   *           If the "index.html" of the report could not be read
+   */
+  static FailedTestReportRoot forReportFile(VirtualFile base, String reportFile)
+      throws IOException {
+    VirtualFile index = base.child("index.html");
+    long lastModified = index.lastModified();
+    String key = index.toURI() + "\n" + lastModified + "\n" + reportFile;
+    byte[] content;
+    try {
+      content = RENDERED.get(key, () -> {
+        try (InputStream in = index.open()) {
+          return IOUtils.toString(in, StandardCharsets.UTF_8).replace("overview.html", reportFile)
+              .getBytes(StandardCharsets.UTF_8);
+        }
+      });
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof IOException ? (IOException)cause : new IOException(cause);
+    }
+    return new FailedTestReportRoot(base, INDEX_FILE_NAME, content, lastModified);
+  }
+
+  @Override
+  public String getName() {
+    return base.getName();
+  }
+
+  @Override
+  public URI toURI() {
+    return base.toURI();
+  }
+
+  @Override
+  public VirtualFile getParent() {
+    return base.getParent();
+  }
+
+  @Override
+  public boolean isDirectory() throws IOException {
+    return true;
+  }
+
+  @Override
+  public boolean isFile() throws IOException {
+    return false;
+  }
+
+  @Override
+  public boolean exists() throws IOException {
+    return true;
+  }
+
+  @Override
+  public VirtualFile[] list() throws IOException {
+    return base.list();
+  }
+
+  @Override
+  public VirtualFile child(String name) {
+    return indexFileName.equals(name) ? new IndexFile() : base.child(name);
+  }
+
+  @Override
+  public long length() throws IOException {
+    return 0;
+  }
+
+  @Override
+  public long lastModified() throws IOException {
+    return base.lastModified();
+  }
+
+  @Override
+  public boolean canRead() throws IOException {
+    return base.canRead();
+  }
+
+  @Override
+  public InputStream open() throws IOException {
+    throw new IOException(getName() + " is a directory");
+  }
+
+  /**
+   * The index file in memory.
+   */
+  private final class IndexFile extends VirtualFile {
+
+    @Override
+    public String getName() {
+      return indexFileName;
+    }
+
+    @Override
+    public URI toURI() {
+      return base.child(indexFileName).toURI();
+    }
+
+    @Override
+    public VirtualFile getParent() {
+      return FailedTestReportRoot.this;
+    }
+
+    @Override
+    public boolean isDirectory() throws IOException {
+      return false;
+    }
+
+    @Override
+    public boolean isFile() throws IOException {
+      return true;
+    }
+
+    @Override
+    public boolean exists() throws IOException {
+      return true;
+    }
+
+    @Override
+    public VirtualFile[] list() throws IOException {
+      return new VirtualFile[0];
+    }
+
+    @Override
+    public VirtualFile child(String name) {
+      return base.child(indexFileName).child(name);
+    }
+
+    @Override
+    public long length() throws IOException {
+      return indexContent.length;
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+      return indexLastModified;
+    }
+
+    @Override
+    public boolean canRead() throws IOException {
+      return true;
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+      return new ByteArrayInputStream(indexContent);
+    }
+  }
+
+}
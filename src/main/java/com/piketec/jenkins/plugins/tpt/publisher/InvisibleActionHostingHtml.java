@@ -22,23 +22,26 @@ package com.piketec.jenkins.plugins.tpt.publisher;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
 
 import javax.servlet.ServletException;
 
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
-import hudson.FilePath;
 import hudson.model.DirectoryBrowserSupport;
 import hudson.model.InvisibleAction;
 import hudson.model.Job;
+import jenkins.util.VirtualFile;
 
 /**
  * An invisibale action to show HTML reports
  * 
  * @author FInfantino, Synopsys Inc.
  */
-public abstract class InvisibleActionHostingHtml extends InvisibleAction {
+public abstract class InvisibleActionHostingHtml extends InvisibleAction implements Serializable {
+
+  private static final long serialVersionUID = 1L;
 
   private String jenkinsConfigId;
 
@@ -77,6 +80,16 @@ public abstract class InvisibleActionHostingHtml extends InvisibleAction {
         jenkinsConfigId);
   }
 
+  /**
+   * @return The root directory of the report. If the report is stored as
+   *         {@link ReportStorage#ZIP}, the root directory of the archive.
+   */
+  protected VirtualFile getReportRoot() {
+    File zip = TPTReportUtils.getReportZip(TPTReportUtils.getPikeTecDir(parentPage.getBuild()),
+        jenkinsConfigId);
+    return zip.isFile() ? new ZipReportFile(zip) : VirtualFile.forFile(pathToHtml());
+  }
+
   /**
    * This method is called when an InvisibleActionHostingHtml object is created. It displays the
    * "index.html"
@@ -94,9 +107,8 @@ public abstract class InvisibleActionHostingHtml extends InvisibleAction {
   public void doDynamic(StaplerRequest req, StaplerResponse rsp)
       throws IOException, ServletException {
     getParentPage().getBuild().checkPermission(Job.READ);
-    File pathToHtml = pathToHtml();
-    DirectoryBrowserSupport dbs = new DirectoryBrowserSupport(this, new FilePath(pathToHtml),
-        "TPT Report", "clipboard.png", false);
+    DirectoryBrowserSupport dbs = new DirectoryBrowserSupport(this, getReportRoot(), "TPT Report",
+        "clipboard.png", false);
     dbs.generateResponse(req, rsp, this);
   }
 
@@ -21,8 +21,10 @@
 package com.piketec.jenkins.plugins.tpt.publisher;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 
 import org.kohsuke.stapler.StaplerProxy;
 import org.kohsuke.stapler.StaplerRequest;
@@ -108,6 +110,25 @@ public class InvisibleActionHostingImages implements Action, StaplerProxy {
   public void doDynamic(StaplerRequest req, StaplerResponse rsp)
       throws IOException, ServletException {
     build.checkPermission(Job.READ);
+    TPTReportPage page = build.getAction(TPTReportPage.class);
+    if (page != null && req.getRestOfPath().equals("/" + TPTReportPage.PIE_CHART_FILE_NAME)) {
+      // another TPT report step of the same build rewrites the chart, so browsers have to
+      // revalidate. Unchanged charts are answered without body.
+      byte[] svg = page.getPieChartSvg();
+      String etag = "\"" + Integer.toHexString(Arrays.hashCode(svg)) + "\"";
+      rsp.setHeader("ETag", etag);
+      rsp.setHeader("Cache-Control", "private, no-cache");
+      if (etag.equals(req.getHeader("If-None-Match"))) {
+        rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
+      }
+      rsp.setHeader("Content-Security-Policy",
+          "sandbox; default-src 'none'; style-src 'unsafe-inline'");
+      rsp.setContentType("image/svg+xml");
+      rsp.setContentLength(svg.length);
+      rsp.getOutputStream().write(svg);
+      return;
+    }
     DirectoryBrowserSupport dbs = new DirectoryBrowserSupport(this,
         new FilePath(TPTReportUtils.getImageDir(build)), "TPT Report", "clipboard.png", false);
     if (req.getRestOfPath().equals("")) {
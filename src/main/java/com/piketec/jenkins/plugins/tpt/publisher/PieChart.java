@@ -20,32 +20,16 @@
  */
 package com.piketec.jenkins.plugins.tpt.publisher;
 
-import java.awt.BasicStroke;
 import java.awt.Color;
-import java.awt.Font;
-import java.awt.Graphics2D;
-import java.awt.Polygon;
-import java.awt.Rectangle;
-import java.awt.RenderingHints;
-import java.awt.font.FontRenderContext;
-import java.awt.geom.Arc2D;
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-import java.net.MalformedURLException;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 
 import javax.annotation.Nullable;
-import javax.swing.ImageIcon;
 
 import org.apache.commons.lang.ArrayUtils;
 
-import jenkins.model.Jenkins;
+import hudson.Util;
 
 /**
  * TPT pie chart.
@@ -57,7 +41,12 @@ class PieChart {
 
   private static final Color BRIGHT_GRAY = new Color(240, 242, 240);
 
-  private static final Font NORMALFONT = new Font("Dialog", Font.PLAIN, 12);
+  private static final String FONT_FAMILY = "Dialog, Arial, Helvetica, sans-serif";
+
+  /** estimated width of a digit in the legend, used to right-align the numbers */
+  private static final int NUMBER_WIDTH = 19;
+
+  private static final int LEGEND_LEFT = 620;
 
   private static void checkLegendSegmentOrder(List<Segment> segments, int[] legendSegmentOrder) {
     if (legendSegmentOrder == null) {
@@ -79,8 +68,6 @@ class PieChart {
 
   static final int totalWidth = 1232;
 
-  double zoom = 1;
-
   private final List<Segment> segments;
 
   private final boolean showTotalInLegend;
@@ -99,25 +86,8 @@ class PieChart {
 
   private static final String totalText = "in total";
 
-  private ImageIcon pieShadow;
-
-  private ImageIcon keyShadow;
-
-  public PieChart(List<Segment> segments, int fractionalDigits, boolean showTotalInLegend)
-      throws MalformedURLException, IOException {
+  public PieChart(List<Segment> segments, int fractionalDigits, boolean showTotalInLegend) {
     this(segments, null, fractionalDigits, showTotalInLegend, false, null);
-    Jenkins jenkinsInstance = Jenkins.get();
-    if (jenkinsInstance == null) {
-      throw new IOException("No Jenkins instance found.");
-    }
-    pieShadow = new ImageIcon(
-        new File(jenkinsInstance.getRootDir(), File.separator + "plugins" + File.separator
-            + "piketec-tpt" + File.separator + "PieChart" + File.separator + "Shadow.png").toURI()
-                .toURL());
-    keyShadow = new ImageIcon(
-        new File(jenkinsInstance.getRootDir(), File.separator + "plugins" + File.separator
-            + "piketec-tpt" + File.separator + "PieChart" + File.separator + "Shadow2.png").toURI()
-                .toURL());
   }
 
   public PieChart(List<Segment> segments, @Nullable int[] legendSegmentOrder, int fractionalDigits,
@@ -152,126 +122,93 @@ class PieChart {
   }
 
   /**
-   * Render the pie chart with the given height
+   * Render the pie chart as scalable vector graphic. The chart has a size of {@value #totalWidth}
+   * x {@value #totalHeight} and can be scaled by the browser without loss.
    * 
-   * @param height
-   *          The height of the resulting image
-   * @return The pie chart rendered as an image
+   * @return The pie chart as SVG document
    */
-  public BufferedImage render(int height) {
-    BufferedImage image = new BufferedImage(totalWidth, totalHeight, BufferedImage.TYPE_INT_RGB);
-    Graphics2D g2 = image.createGraphics();
-    g2.scale(zoom, zoom);
-    // fill background to white
-    g2.setColor(Color.WHITE);
-    g2.fill(new Rectangle(totalWidth, totalHeight));
-    // prepare render hints
-    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-    g2.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION,
-        RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-    g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-        RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-    g2.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
-        RenderingHints.VALUE_FRACTIONALMETRICS_ON);
-    g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-    g2.setStroke(new BasicStroke(4, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-
-    // draw shadow image
-    g2.drawImage(pieShadow.getImage(), 0, 0, pieShadow.getImageObserver());
-
-    double start = 0;
-    List<Arc2D> pies = new ArrayList<>();
+  public String renderSvg() {
+    StringBuilder svg = new StringBuilder();
+    svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 ").append(totalWidth)
+        .append(' ').append(totalHeight).append("\" width=\"").append(totalWidth)
+        .append("\" height=\"").append(totalHeight).append("\">\n");
+    // shadow of the pie and the legend keys
+    svg.append("<defs><filter id=\"shadow\"><feDropShadow dx=\"6\" dy=\"6\" "
+        + "stdDeviation=\"6\" flood-opacity=\"0.35\"/></filter></defs>\n");
+    svg.append("<rect width=\"").append(totalWidth).append("\" height=\"").append(totalHeight)
+        .append("\" fill=\"#ffffff\"/>\n");
     // pie segmente erzeugen und fuellen
+    svg.append("<g filter=\"url(#shadow)\" stroke=\"#ffffff\" stroke-width=\"4\" "
+        + "stroke-linejoin=\"round\">\n");
     if (total == 0) {
-      g2.setColor(BRIGHT_GRAY);
-      g2.fillOval(centerX - radius, centerY - radius, 2 * radius, 2 * radius);
-      g2.setColor(Color.WHITE);
-      g2.drawOval(centerX - radius, centerY - radius, 2 * radius, 2 * radius);
+      svg.append("<circle cx=\"").append(centerX).append("\" cy=\"").append(centerY)
+          .append("\" r=\"").append(radius).append("\" fill=\"").append(toHex(BRIGHT_GRAY))
+          .append("\"/>\n");
     } else {
+      double start = 0;
       for (Segment s : segments) {
         double portionDegrees = s.getPortion() / total;
-        Arc2D pie = paintPieSegment(g2, start, portionDegrees, s.getColor());
+        appendPieSegment(svg, start, portionDegrees, radius, s.getColor());
         if (withSubSegments) {
           double smallRadius = radius * s.getSubSegmentRatio();
-          paintPieSegment(g2, start, portionDegrees, smallRadius, s.getColor().darker());
+          appendPieSegment(svg, start, portionDegrees, smallRadius, s.getColor().darker());
         }
         start += portionDegrees;
         // portion degree jetzt noch als String (z.B. "17.3%" oder "20%" zusammenbauen)
         String p = String.format(Locale.ENGLISH, "%.1f", Math.rint(portionDegrees * 1000) / 10.0);
         p = removeSuffix(p, ".0"); // evtl. ".0" bei z.B. "25.0" abschneiden (-> "25")
         s.setPercent(p + "%");
-        pies.add(pie);
-      }
-      // weissen Rahmen um die pie segmente zeichen
-      g2.setColor(Color.WHITE);
-      for (Arc2D pie : pies) {
-        g2.draw(pie);
       }
     }
+    svg.append("</g>\n");
     // Legende zeichnen
-    renderLegend(g2);
+    appendLegend(svg);
     // "xx%" Label direkt auf die pie segmente zeichen
-    g2.setColor(Color.WHITE);
-    float fontSize = 32f;
-    g2.setFont(NORMALFONT.deriveFont(fontSize).deriveFont(Font.BOLD));
-    start = 0;
-    for (Segment s : segments) {
-      if (s.getPortion() < 1E-6) {
-        continue; // ignore segments with portions that are extremely small
+    if (total != 0) {
+      svg.append("<g fill=\"#ffffff\" font-family=\"").append(FONT_FAMILY)
+          .append("\" font-size=\"32\" font-weight=\"bold\" text-anchor=\"middle\">\n");
+      double start = 0;
+      for (Segment s : segments) {
+        double portionDegrees = s.getPortion() / total;
+        if (s.getPortion() >= 1E-6) {
+          double angle = start + portionDegrees / 2; // genau in der Mitte des Segments
+          double x = centerX + 0.6 * radius * Math.sin(2 * Math.PI * angle);
+          double y = centerY - 0.6 * radius * Math.cos(2 * Math.PI * angle) + 16;
+          appendText(svg, x, y, s.getPercent());
+        }
+        start += portionDegrees;
       }
-      double portionDegrees = s.getPortion() / total;
-      double angle = start + portionDegrees / 2; // genau in der Mitte des Segments
-      double xOffsetForCenteredTxt = 8 * s.getPercent().length(); // assume roughly 8px per char
-      int x = (int)(centerX + 0.6 * radius * Math.sin(2 * Math.PI * angle) - xOffsetForCenteredTxt);
-      int y = (int)(centerY - 0.6 * radius * Math.cos(2 * Math.PI * angle) + fontSize / 2);
-      g2.drawString(s.getPercent(), x, y);
-      start += portionDegrees;
+      svg.append("</g>\n");
     }
-    return image;
+    svg.append("</svg>\n");
+    return svg.toString();
   }
 
-  private void renderLegend(Graphics2D g2) {
-    g2.setFont(NORMALFONT.deriveFont(32f).deriveFont(Font.BOLD));
-
-    // erst die Breite der Zahlen fuer die Einrueckung berechnen
-    Font font = g2.getFont();
-    FontRenderContext fontRenderContext = g2.getFontRenderContext();
-    Map<Segment, Double> numberWidths = new HashMap<>();
-    double maxNumberWidth = 0;
+  private void appendLegend(StringBuilder svg) {
+    // erst die Breite der Zahlen fuer die Einrueckung abschaetzen, die Zahlen sind rechtsbuendig
+    int maxNumberLength = 0;
     for (Segment seg : segments) {
-      double numberWidth =
-          font.getStringBounds(legendPortionFormat.format(seg.getPortion()), fontRenderContext)
-              .getWidth();
-      numberWidths.put(seg, numberWidth);
-      maxNumberWidth = Math.max(maxNumberWidth, numberWidth);
+      maxNumberLength =
+          Math.max(maxNumberLength, legendPortionFormat.format(seg.getPortion()).length());
     }
     if (showTotalInLegend) {
-      double numberWidth =
-          font.getStringBounds(legendPortionFormat.format(total), fontRenderContext).getWidth();
-      numberWidths.put(null, numberWidth);
-      maxNumberWidth = Math.max(maxNumberWidth, numberWidth);
+      maxNumberLength = Math.max(maxNumberLength, legendPortionFormat.format(total).length());
     }
-
+    int numberRight = LEGEND_LEFT + 80 + maxNumberLength * NUMBER_WIDTH;
     // jetzt die Zeilen in die Legende malen
     int verticalOffset = 0;
     for (int row = 0; row < segments.size(); ++row) {
       Segment seg = getLegendSegment(row);
-      // Zahlen rechtsbuendig
-      double indentation = maxNumberWidth - numberWidths.get(seg);
-      String segmentPortionNumber = legendPortionFormat.format(seg.getPortion());
-      String segmentText = seg.getText();
-      Color segmentColor = seg.getColor();
-      String subSegmentText = seg.getSubSegmentText();
       String subNumberText = legendPortionFormat.format(seg.subPortion);
-      drawLegendLine(g2, verticalOffset, indentation, segmentColor, segmentText,
-          segmentPortionNumber, seg.getPortion() != 1d, seg.getSubPortion() > 0, subSegmentText,
-          subNumberText, seg.getSubPortion() != 1d);
+      appendLegendLine(svg, verticalOffset, numberRight, seg.getColor(), seg.getText(),
+          legendPortionFormat.format(seg.getPortion()), seg.getPortion() != 1d,
+          seg.getSubPortion() > 0, seg.getSubSegmentText(), subNumberText,
+          seg.getSubPortion() != 1d);
       verticalOffset += 85;
     }
     if (showTotalInLegend) {
-      double indentation = maxNumberWidth - numberWidths.get(null);
       String subNumberText = legendPortionFormat.format(subTotal);
-      drawLegendLine(g2, verticalOffset, indentation, null, totalText,
+      appendLegendLine(svg, verticalOffset, numberRight, null, totalText,
           legendPortionFormat.format(total), total != 1, subTotalTextOrNull != null,
           subTotalTextOrNull, subNumberText, subTotal != 1);
     }
@@ -285,52 +222,76 @@ class PieChart {
     }
   }
 
-  private void drawLegendLine(Graphics2D g2, int verticalOffset, double horizontalNumberOffset,
-                              Color col, String txt, String numberText, boolean textIsPlural,
-                              boolean withSubSegment, String subSegmentText, String subNumberText,
-                              boolean subTextIsPlural) {
-    int left = 620;
+  private void appendLegendLine(StringBuilder svg, int verticalOffset, int numberRight, Color col,
+                                String txt, String numberText, boolean textIsPlural,
+                                boolean withSubSegment, String subSegmentText,
+                                String subNumberText, boolean subTextIsPlural) {
     // col == null --> total --> kein Rechteck
     if (col != null) {
-      g2.drawImage(keyShadow.getImage(), left, 30 + verticalOffset, keyShadow.getImageObserver());
-      g2.setColor(col);
-      g2.fillRect(left + 13, 37 + verticalOffset, 45, 45);
+      svg.append("<rect x=\"").append(LEGEND_LEFT + 13).append("\" y=\"")
+          .append(37 + verticalOffset).append("\" width=\"45\" height=\"45\" fill=\"")
+          .append(toHex(col)).append("\" filter=\"url(#shadow)\"/>\n");
       if (withSubSegment) {
-        Polygon p = new Polygon(new int[] { left + 13 + 45, left + 13 + 45, left + 13 },
-            new int[] { verticalOffset + 37, verticalOffset + 37 + 45, verticalOffset + 37 + 45 },
-            3);
-        g2.setColor(col.darker());
-        g2.fillPolygon(p);
+        int right = LEGEND_LEFT + 13 + 45;
+        svg.append("<polygon points=\"").append(right).append(',').append(verticalOffset + 37)
+            .append(' ').append(right).append(',').append(verticalOffset + 37 + 45).append(' ')
+            .append(LEGEND_LEFT + 13).append(',').append(verticalOffset + 37 + 45)
+            .append("\" fill=\"").append(toHex(col.darker())).append("\"/>\n");
       }
     }
-    g2.setColor(Color.BLACK);
-    StringBuffer sb = new StringBuffer(numberText);
-    sb.append("  ").append(plural(textIsPlural, txt));
+    StringBuilder sb = new StringBuilder(plural(textIsPlural, txt));
     if (withSubSegment) {
       sb.append(" with ");
       sb.append(subNumberText);
       sb.append(" ");
       sb.append(plural(subTextIsPlural, subSegmentText));
     }
-    g2.drawString(sb.toString(), (int)(left + 80 + horizontalNumberOffset),
-        30 + 41 + verticalOffset);
+    int y = 30 + 41 + verticalOffset;
+    svg.append("<g fill=\"#000000\" font-family=\"").append(FONT_FAMILY)
+        .append("\" font-size=\"32\" font-weight=\"bold\">");
+    svg.append("<text x=\"").append(numberRight).append("\" y=\"").append(y)
+        .append("\" text-anchor=\"end\">").append(Util.xmlEscape(numberText)).append("</text>");
+    svg.append("<text x=\"").append(numberRight + 18).append("\" y=\"").append(y).append("\">")
+        .append(Util.xmlEscape(sb.toString())).append("</text>");
+    svg.append("</g>\n");
+  }
+
+  private static void appendPieSegment(StringBuilder svg, double startRatio, double endRatio,
+                                       double radius, Color fillColor) {
+    if (endRatio <= 0 || radius <= 0) {
+      return;
+    }
+    String fill = toHex(fillColor);
+    if (endRatio >= 1) {
+      svg.append("<circle cx=\"").append(centerX).append("\" cy=\"").append(centerY)
+          .append("\" r=\"").append(format(radius)).append("\" fill=\"").append(fill)
+          .append("\"/>\n");
+      return;
+    }
+    // top (= north), mit dem Uhrzeigersinn
+    double startAngle = 2 * Math.PI * startRatio;
+    double endAngle = 2 * Math.PI * (startRatio + endRatio);
+    svg.append("<path d=\"M ").append(centerX).append(' ').append(centerY).append(" L ")
+        .append(format(centerX + radius * Math.sin(startAngle))).append(' ')
+        .append(format(centerY - radius * Math.cos(startAngle))).append(" A ")
+        .append(format(radius)).append(' ').append(format(radius)).append(" 0 ")
+        .append(endRatio > 0.5 ? 1 : 0).append(" 1 ")
+        .append(format(centerX + radius * Math.sin(endAngle))).append(' ')
+        .append(format(centerY - radius * Math.cos(endAngle))).append(" Z\" fill=\"")
+        .append(fill).append("\"/>\n");
+  }
 
+  private static void appendText(StringBuilder svg, double x, double y, String text) {
+    svg.append("<text x=\"").append(format(x)).append("\" y=\"").append(format(y)).append("\">")
+        .append(Util.xmlEscape(text)).append("</text>\n");
   }
 
-  private Arc2D paintPieSegment(Graphics2D g2, double startRatio, double endRatio,
-                                Color fillColor) {
-    return paintPieSegment(g2, startRatio, endRatio, radius, fillColor);
+  private static String format(double value) {
+    return String.format(Locale.ENGLISH, "%.2f", value);
   }
 
-  private Arc2D paintPieSegment(Graphics2D g2, double startRatio, double endRatio, double radius,
-                                Color fillColor) {
-    Arc2D pie = new Arc2D.Double(Arc2D.PIE);
-    double startAngle = 90 - 360 * startRatio; // top (= north)
-    double endAngle = -360 * endRatio; // mit dem Uhrzeigersinn
-    pie.setArcByCenter(centerX, centerY, radius, startAngle, endAngle, Arc2D.PIE);
-    g2.setColor(fillColor);
-    g2.fill(pie);
-    return pie;
+  private static String toHex(Color color) {
+    return String.format("#%06x", color.getRGB() & 0xFFFFFF);
   }
 
   private static final String removeSuffix(String text, String suffix) {
@@ -0,0 +1,76 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2018 Synopsys Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.piketec.jenkins.plugins.tpt.publisher;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import hudson.model.Run;
+import jenkins.util.SystemProperties;
+
+/**
+ * Keeps the rendered pie charts of the recently viewed builds in memory, so the chart is neither
+ * rendered nor read from disk for every page view. The number of cached charts can be set with the
+ * system property "com.piketec.jenkins.plugins.tpt.publisher.PieChartCache.size".
+ */
+final class PieChartCache {
+
+  private static final Cache<String, byte[]> CACHE = CacheBuilder.newBuilder()
+      .maximumSize(SystemProperties.getInteger(PieChartCache.class.getName() + ".size", 256))
+      .build();
+
+  private PieChartCache() {
+    // NOP
+  }
+
+  /**
+   * @param build
+   *          The build the chart belongs to
+   * @param chart
+   *          The rendered chart
+   */
+  static void put(Run< ? , ? > build, byte[] chart) {
+    CACHE.put(build.getExternalizableId(), chart);
+  }
+
+  /**
+   * @param build
+   *          The build the chart belongs to
+   * @param loader
+   *          Reads or renders the chart if it is not cached
+   * @return The rendered chart
+   * @throws IOException
+   *           If the chart could not be loaded
+   */
+  static byte[] get(Run< ? , ? > build, Callable<byte[]> loader) throws IOException {
+    try {
+      return CACHE.get(build.getExternalizableId(), loader);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof IOException ? (IOException)cause : new IOException(cause);
+    }
+  }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2018 Synopsys Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.piketec.jenkins.plugins.tpt.publisher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import javax.annotation.CheckForNull;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+
+/**
+ * A content-addressed store for the files of the TPT reports on the controller. Every file is
+ * stored once under its SHA-256 hash in "piketec-tpt/blobs" below the Jenkins root directory. The
+ * report directories of the builds contain hard links to these files, so identical files (style
+ * sheets, images, unchanged test case reports) only use disk space once. Because the links are
+ * ordinary files, the reports are served as before.
+ * <p>
+ * A file of the store that is not linked from any build anymore is deleted by the
+ * {@link GarbageCollector}.
+ */
+public final class ReportBlobStore {
+
+  private ReportBlobStore() {
+    // NOP
+  }
+
+  @CheckForNull
+  private static File getStoreDir() {
+    Jenkins jenkins = Jenkins.getInstanceOrNull();
+    return jenkins == null ? null : new File(jenkins.getRootDir(), "piketec-tpt/blobs");
+  }
+
+  /**
+   * Replaces all files below the given directory that are already in the store by hard links to
+   * the stored files. Files that are not in the store yet are added to it.
+   * 
+   * @param dir
+   *          The copied report directory in the build directory
+   * @return The number of bytes that are shared with other builds
+   * @throws IOException
+   *           If the files could not be read or linked, e.g. because the file system does not
+   *           support hard links. Already linked files stay linked, all other files stay copies.
+   */
+  static long deduplicate(File dir) throws IOException {
+    File storeDir = getStoreDir();
+    if (storeDir == null) {
+      return 0;
+    }
+    Path store = storeDir.toPath();
+    long[] shared = { 0 };
+    try {
+      Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          if (attrs.isRegularFile() && attrs.size() > 0) {
+            shared[0] += deduplicate(store, file, attrs.size());
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (UnsupportedOperationException e) {
+      throw new IOException("Hard links are not supported: " + e.getMessage(), e);
+    }
+    return shared[0];
+  }
+
+  private static long deduplicate(Path store, Path file, long size) throws IOException {
+    String hash = hash(file);
+    Path blob = store.resolve(hash.substring(0, 2)).resolve(hash);
+    Files.createDirectories(blob.getParent());
+    try {
+      // first occurrence: the file itself becomes the stored file
+      Files.createLink(blob, file);
+      return 0;
+    } catch (FileAlreadyExistsException e) {
+      // NOP, link to the stored file
+    }
+    if (Files.isSameFile(blob, file)) {
+      return 0;
+    }
+    Path tmp = file.resolveSibling(file.getFileName() + ".dedup");
+    try {
+      Files.createLink(tmp, blob);
+    } catch (NoSuchFileException e) {
+      // deleted by the garbage collector in the meantime, keep the copy
+      return 0;
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return size;
+  }
+
+  private static String hash(Path file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+    byte[] buffer = new byte[65536];
+    try (InputStream in = Files.newInputStream(file)) {
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /**
+   * Deletes the files of the store that are not linked from any report anymore, i.e. the reports
+   * of all builds that used them were deleted. Needs a file system that reports the number of
+   * hard links of a file, otherwise nothing is deleted.
+   */
+  @Extension
+  public static final class GarbageCollector extends AsyncPeriodicWork {
+
+    public GarbageCollector() {
+      super("TPT report store garbage collection");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+      return DAY;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+      File storeDir = getStoreDir();
+      if (storeDir == null || !storeDir.isDirectory()) {
+        return;
+      }
+      long[] deleted = { 0 };
+      try {
+        Files.walkFileTree(storeDir.toPath(), new SimpleFileVisitor<Path>() {
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+              throws IOException {
+            Object links = Files.getAttribute(file, "unix:nlink");
+            if (links instanceof Integer && (Integer)links <= 1) {
+              Files.deleteIfExists(file);
+              deleted[0]++;
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+      } catch (UnsupportedOperationException | IllegalArgumentException e) {
+        listener.getLogger().println(
+            "The file system does not report hard link counts, skipped garbage collection.");
+        return;
+      }
+      listener.getLogger().println("Deleted " + deleted[0] + " unused files from " + storeDir);
+    }
+  }
+
+}
@@ -29,6 +29,8 @@ import com.piketec.jenkins.plugins.tpt.TptResult;
  */
 public class TPTFile extends InvisibleActionHostingHtml {
 
+  private static final long serialVersionUID = 1L;
+
   private String fileName;
 
   private String configuration;
@@ -0,0 +1,152 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2018 Synopsys Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.piketec.jenkins.plugins.tpt.publisher;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.piketec.jenkins.plugins.tpt.TptLogger;
+
+import hudson.FilePath;
+
+/**
+ * The content of the TPT report of one configuration: The {@link TPTFile} with the result counters
+ * and the list of failed test cases. It is created on the agent while the test data is parsed for
+ * the JUnit results, so the test_summary.xml is only read once. The publisher uses it instead of
+ * parsing the test_summary.xml again.
+ */
+public final class TPTReportModel implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String testDataDir;
+
+  private final String reportDir;
+
+  private final TPTFile tptFile;
+
+  private final ArrayList<TPTTestCase> failedTests = new ArrayList<>();
+
+  private final ArrayList<String> errors = new ArrayList<>();
+
+  /**
+   * Creates an empty model. Feed the test_summary.xml to {@link #createHandler(boolean)} to fill
+   * it.
+   * 
+   * @param tptFileName
+   *          The name of the TPT file without extension
+   * @param configuration
+   *          The name of the execution configuration
+   * @param jenkinsConfigId
+   *          The unique ID of the Jenkins configuration
+   * @param testDataDirOnRemote
+   *          The absolute path of the test data directory
+   * @param reportDirOnRemote
+   *          The absolute path of the report directory. Needed to resolve paths to report files
+   */
+  public TPTReportModel(String tptFileName, String configuration, String jenkinsConfigId,
+                        String testDataDirOnRemote, String reportDirOnRemote) {
+    this.testDataDir = testDataDirOnRemote;
+    this.reportDir = reportDirOnRemote;
+    this.tptFile = new TPTFile(tptFileName, configuration, jenkinsConfigId);
+  }
+
+  /**
+   * @param testcaseInformationFilesExist
+   *          if there are "testcase_information.xml" files in the test data directory
+   * @return The SAX handler that fills this model from the test_summary.xml
+   */
+  public DefaultHandler createHandler(boolean testcaseInformationFilesExist) {
+    return new TPTReportSAXHandler(tptFile, failedTests, reportDir, tptFile.getConfiguration(),
+        testcaseInformationFilesExist, new CollectingLogger(errors));
+  }
+
+  /**
+   * @param testDataDirPath
+   *          The test data directory the publisher would parse
+   * @param reportDirPath
+   *          The report directory the publisher would link to
+   * @return <code>true</code> if this model was created for the given directories
+   */
+  boolean isFor(FilePath testDataDirPath, FilePath reportDirPath) {
+    return testDataDir.equals(testDataDirPath.getRemote())
+        && reportDir.equals(reportDirPath.getRemote());
+  }
+
+  /**
+   * @return The TPT file with the result counters
+   */
+  TPTFile getTptFile() {
+    return tptFile;
+  }
+
+  /**
+   * @return The test cases that did not pass
+   */
+  List<TPTTestCase> getFailedTests() {
+    return Collections.unmodifiableList(failedTests);
+  }
+
+  /**
+   * @param error
+   *          An error that occured while the model was filled
+   */
+  void addError(String error) {
+    errors.add(error);
+  }
+
+  /**
+   * @return The errors that occured while the model was filled
+   */
+  public List<String> getErrors() {
+    return Collections.unmodifiableList(errors);
+  }
+
+  /**
+   * Collects errors and warnings, so they can be logged where the model is used.
+   */
+  private static final class CollectingLogger extends TptLogger {
+
+    private final List<String> messages;
+
+    CollectingLogger(List<String> messages) {
+      super(new PrintStream(OutputStream.nullOutputStream()));
+      this.messages = messages;
+    }
+
+    @Override
+    public void warn(String msg) {
+      messages.add(msg);
+    }
+
+    @Override
+    public void error(String msg) {
+      messages.add(msg);
+    }
+  }
+
+}
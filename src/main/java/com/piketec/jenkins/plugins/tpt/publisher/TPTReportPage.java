@@ -21,20 +21,14 @@
 package com.piketec.jenkins.plugins.tpt.publisher;
 
 import java.awt.Color;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.Collection;
 import java.util.List;
 
-import javax.imageio.ImageIO;
-
-import org.kohsuke.stapler.bind.JavaScriptMethod;
-
-import com.google.common.io.Files;
-
 import hudson.model.AbstractBuild;
 import hudson.model.Action;
 import hudson.model.Result;
@@ -75,6 +69,9 @@ public class TPTReportPage implements RunAction2, SimpleBuildStep.LastBuildActio
 
   private static final Color COLOR_BROWN = new Color(177, 7, 7);
 
+  /** The name of the pie chart in the image directory */
+  static final String PIE_CHART_FILE_NAME = "pieChart.svg";
+
   /**
    * Creates a new TPTRportPage
    * 
@@ -285,18 +282,28 @@ public class TPTReportPage implements RunAction2, SimpleBuildStep.LastBuildActio
     return ((Run< ? , ? >)previousBuilds.get(previousBuilds.size() - 1)).getNumber();
   }
 
-  @JavaScriptMethod
-  public String getPieChart() {
-    File pieChartFile = getPieChartFile();
-    try {
-      if (!pieChartFile.exists()) {
-        createGraph();
+  /**
+   * @return The action that serves the images of the report, e.g. the pie chart
+   */
+  @StaplerDispatchable
+  public InvisibleActionHostingImages getImages() {
+    return new InvisibleActionHostingImages(build);
+  }
+
+  /**
+   * @return The pie chart as SVG. Rendered when the report is published, for older builds when it
+   *         is requested the first time.
+   * @throws IOException
+   *           If the pie chart could not be read
+   */
+  byte[] getPieChartSvg() throws IOException {
+    return PieChartCache.get(build, () -> {
+      File pieChartFile = getPieChartFile();
+      if (pieChartFile.isFile()) {
+        return Files.readAllBytes(pieChartFile.toPath());
       }
-      return "data:image/png;base64,"
-          + Base64.getMimeEncoder().encodeToString(Files.toByteArray(pieChartFile));
-    } catch (IOException e) {
-      return "";
-    }
+      return createGraph();
+    });
   }
 
   @Override
@@ -307,39 +314,32 @@ public class TPTReportPage implements RunAction2, SimpleBuildStep.LastBuildActio
   }
 
   /**
-   * Creates the pie chart from the TPT Report
+   * Creates the pie chart from the TPT Report, stores it in the build directory and keeps it in
+   * memory
    * 
+   * @return The pie chart as SVG
    * @throws IOException
    */
-  void createGraph() throws IOException {
-    List<com.piketec.jenkins.plugins.tpt.publisher.PieChart.Segment> list = new ArrayList<>();
-    com.piketec.jenkins.plugins.tpt.publisher.PieChart.Segment passed =
-        new PieChart.Segment("Passed", passedCount, COLOR_GREEN);
-    com.piketec.jenkins.plugins.tpt.publisher.PieChart.Segment inconlusive =
-        new PieChart.Segment("Inconclusive", inconclusiveCount, COLOR_YELLOW);
-    com.piketec.jenkins.plugins.tpt.publisher.PieChart.Segment error =
-        new PieChart.Segment("Error", errorCount, COLOR_BROWN);
-    com.piketec.jenkins.plugins.tpt.publisher.PieChart.Segment failed =
-        new PieChart.Segment("Failed", failedCount, COLOR_RED);
-    list.add(passed);
-    list.add(inconlusive);
-    list.add(error);
-    list.add(failed);
+  byte[] createGraph() throws IOException {
+    List<PieChart.Segment> list = new ArrayList<>();
+    list.add(new PieChart.Segment("Passed", passedCount, COLOR_GREEN));
+    list.add(new PieChart.Segment("Inconclusive", inconclusiveCount, COLOR_YELLOW));
+    list.add(new PieChart.Segment("Error", errorCount, COLOR_BROWN));
+    list.add(new PieChart.Segment("Failed", failedCount, COLOR_RED));
     PieChart pieChart = new PieChart(list, 0, true);
+    byte[] svg = pieChart.renderSvg().getBytes(StandardCharsets.UTF_8);
     File output = getPieChartFile();
-    BufferedImage image = pieChart.render(150);
-    if (!output.exists() && !output.mkdirs()) {
-      throw new IOException("Could not create directory " + output.getAbsolutePath());
-    }
-    if (!ImageIO.write(image, "png", output)) {
-      throw new IOException("Could not create pie chart");
+    File dir = output.getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Could not create directory " + dir.getAbsolutePath());
     }
-
+    Files.write(output.toPath(), svg);
+    PieChartCache.put(build, svg);
+    return svg;
   }
 
   private File getPieChartFile() {
-    return new File(build.getRootDir().getAbsolutePath(),
-        "Piketec-TPT" + File.separator + "Images" + File.separator + "pieChart.png");
+    return new File(TPTReportUtils.getImageDir(build), PIE_CHART_FILE_NAME);
   }
 
 }
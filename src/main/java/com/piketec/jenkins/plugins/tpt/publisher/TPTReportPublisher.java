@@ -20,10 +20,14 @@
  */
 package com.piketec.jenkins.plugins.tpt.publisher;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -31,33 +35,38 @@ import java.util.HashSet;
 import java.util.List;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.xml.sax.SAXException;
 
 import com.piketec.jenkins.plugins.tpt.InvisibleActionTPTExecution;
 import com.piketec.jenkins.plugins.tpt.Publish;
 import com.piketec.jenkins.plugins.tpt.TptLogger;
 import com.piketec.jenkins.plugins.tpt.Utils;
+import com.piketec.jenkins.plugins.tpt.XmlParsers;
 
 import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
+import hudson.Functions;
 import hudson.Launcher;
 import hudson.model.AbstractProject;
 import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Publisher;
 import hudson.tasks.Recorder;
+import hudson.util.DirScanner;
+import hudson.util.ListBoxModel;
+import hudson.util.io.ArchiverFactory;
+import jenkins.MasterToSlaveFileCallable;
 import jenkins.tasks.SimpleBuildStep;
 
 /**
@@ -67,11 +76,30 @@ import jenkins.tasks.SimpleBuildStep;
  */
 public class TPTReportPublisher extends Recorder implements SimpleBuildStep {
 
+  private ReportStorage reportStorage = null;
+
   @DataBoundConstructor
   public TPTReportPublisher() {
     // NOP
   }
 
+  /**
+   * @return How the report directories are stored in the build directory
+   */
+  public ReportStorage getReportStorage() {
+    return reportStorage == null ? DescriptorImpl.getDefaultReportStorage() : reportStorage;
+  }
+
+  /**
+   * @param reportStorage
+   *          How the report directories are stored in the build directory
+   */
+  @DataBoundSetter
+  public void setReportStorage(ReportStorage reportStorage) {
+    this.reportStorage =
+        DescriptorImpl.getDefaultReportStorage().equals(reportStorage) ? null : reportStorage;
+  }
+
   /**
    * Creates the directories on the build directory, loops over all JenkinsConfigurations and
    * extract from each one the data from the "test_summary.xml". Then it sets the failed tests and
@@ -107,6 +135,9 @@ public class TPTReportPublisher extends Recorder implements SimpleBuildStep {
     }
 
     for (InvisibleActionTPTExecution cfg : jenkinsConfigurationsToPublishForThisWorkspace) {
+      TPTReportModel reportModel = cfg.getReportModel();
+      // the action stays attached to the build, it must not keep all failed tests in memory
+      cfg.setReportModel(null);
       // make file in build and copy report dir
       File dirExConfig = TPTReportUtils.getReportDir(piketectptDir, cfg.getId());
       if (!dirExConfig.mkdirs()) {
@@ -117,19 +148,30 @@ public class TPTReportPublisher extends Recorder implements SimpleBuildStep {
       FilePath testDataDir = new FilePath(workspace, cfg.getTestDataDir());
       String tptFileName = FilenameUtils.getBaseName(cfg.getTptFile());
       if (reportDir.exists()) {
-        Utils.copyRecursive(reportDir, new FilePath(dirExConfig), logger);
+        if (getReportStorage() == ReportStorage.ZIP) {
+          archive(reportDir, TPTReportUtils.getReportZip(piketectptDir, cfg.getId()), dirExConfig,
+              logger);
+        } else {
+          Utils.copyRecursiveArchived(reportDir, new FilePath(dirExConfig), logger);
+          if (getReportStorage() == ReportStorage.DEDUPLICATED) {
+            deduplicate(dirExConfig, logger);
+          }
+        }
       }
       FilePath reportXML = new FilePath(testDataDir, "test_summary.xml");
-      if (reportXML.exists()) {
-        TPTFile newTPTFile = new TPTFile(tptFileName, cfg.getConfiguration(), cfg.getId());
-        // get the remote path, then cut the path and get just what is needed (the last part),
-        // see getLinkToFailedReport() in TPTReportSAXHandler.
-        // Because of the GenerateOverviewReport bug, we should check if there are
-        // testcase_information.xml, if there are not any of them, pass a flag to the parser.
-        boolean isFileCorrupt = checkForTestCaseInformation(testDataDir);
-        parse(reportXML, newTPTFile, failedTests, reportDir.getRemote(), cfg.getConfiguration(),
-            logger, isFileCorrupt);
-        tptFiles.add(newTPTFile);
+      if (reportModel != null && reportModel.isFor(testDataDir, reportDir)) {
+        // already collected while the JUnit results were created, no need to parse again
+        tptFiles.add(reportModel.getTptFile());
+        failedTests.addAll(reportModel.getFailedTests());
+      } else if (reportXML.exists()) {
+        // parse on the agent, so the test_summary.xml is not streamed to the controller
+        TPTReportModel parsedModel = testDataDir.act(new ParseReportModelCallable(tptFileName,
+            cfg.getConfiguration(), cfg.getId(), reportDir.getRemote()));
+        for (String error : parsedModel.getErrors()) {
+          logger.error(error);
+        }
+        tptFiles.add(parsedModel.getTptFile());
+        failedTests.addAll(parsedModel.getFailedTests());
       } else {
         logger.error("There is no test_summary.xml for the file \"" + tptFileName
             + "\". It won't be published ");
@@ -177,51 +219,91 @@ public class TPTReportPublisher extends Recorder implements SimpleBuildStep {
     }
   }
 
-  private boolean checkForTestCaseInformation(FilePath testDataDir)
+  /**
+   * Stores the report directory as one zip file. The archive is created on the agent and streamed
+   * to a temporary file on the controller that is moved into place once it is complete, so an
+   * aborted build never leaves a partial zip file. If that fails, the report directory is copied
+   * instead.
+   */
+  private static void archive(FilePath reportDir, File zip, File dirExConfig, TptLogger logger)
       throws IOException, InterruptedException {
-    Collection<FilePath> files = new HashSet<>();
-    Publish.find(testDataDir, "testcase_information.xml", files);
-    boolean containsTestcaseInformation = false;
-    FilePath summaryXMl = new FilePath(testDataDir, "test_summary.xml");
-    if (summaryXMl.exists()) {
-      try (InputStream inputStream = summaryXMl.read()) {
-        String result = IOUtils.toString(inputStream, StandardCharsets.UTF_8);
-        containsTestcaseInformation = result.contains("TestcaseInformation");
+    Path tmp = Files.createTempFile(zip.toPath().getParent(), zip.getName(), ".tmp");
+    try {
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+        reportDir.archive(ArchiverFactory.ZIP, out, new DirScanner.Full());
       }
+      try {
+        Files.move(tmp, zip.toPath(), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        ZipReportIndex.invalidate(zip);
+      }
+    } catch (IOException e) {
+      logger.warn("Could not store the report as zip file, it is stored as a copy: "
+          + e.getMessage());
+      Files.deleteIfExists(zip.toPath());
+      Utils.copyRecursiveArchived(reportDir, new FilePath(dirExConfig), logger);
+    } finally {
+      Files.deleteIfExists(tmp);
     }
-    // File is only corrupt, when there arent any testcase_information and it does not contain any
-    // testcaseinformation tag.
-    return files.size() == 0 && !containsTestcaseInformation;
   }
 
   /**
-   * Xml SAXparser
-   * 
-   * @param xmlFile
-   * @param tptFile
-   * @param failedTests
-   * @param reportDirOnRemote
-   * @param executionConfiguration
-   * @param isFileCorrupt
-   * @throws InterruptedException
+   * Replaces the files of the copied report directory that are already known from other builds by
+   * hard links. If that fails, the remaining files simply stay copies.
    */
-  private void parse(FilePath xmlFile, TPTFile tptFile, ArrayList<TPTTestCase> failedTests,
-                     String reportDirOnRemote, String executionConfiguration, TptLogger logger,
-                     boolean isFileCorrupt)
-      throws InterruptedException {
-    SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
-
+  private static void deduplicate(File dirExConfig, TptLogger logger) {
     try {
-      SAXParser saxParser = saxParserFactory.newSAXParser();
-      TPTReportSAXHandler handler = new TPTReportSAXHandler(tptFile, failedTests, reportDirOnRemote,
-          executionConfiguration, isFileCorrupt, logger);
-      try (InputStream inputStream = xmlFile.read()) {
-        saxParser.parse(inputStream, handler);
-      }
-    } catch (ParserConfigurationException | SAXException | IOException e) {
-      logger.error(e.getMessage());
+      long shared = ReportBlobStore.deduplicate(dirExConfig);
+      logger.info(Functions.humanReadableByteSize(shared) + " of the report in \""
+          + dirExConfig.getName() + "\" are shared with other builds.");
+    } catch (IOException e) {
+      logger.warn("Could not deduplicate the report, it is stored as a copy: " + e.getMessage());
     }
+  }
 
+  /**
+   * Parses the "test_summary.xml" of a test data directory on the agent and returns the filled
+   * {@link TPTReportModel}. The file is streamed through the SAX handler once. Because of the
+   * GenerateOverviewReport bug we have to check if there are "testcase_information.xml" files. If
+   * there are none, the handler decides at the end of the document if the file is corrupt.
+   */
+  private static final class ParseReportModelCallable
+      extends MasterToSlaveFileCallable<TPTReportModel> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String tptFileName;
+
+    private final String configuration;
+
+    private final String jenkinsConfigId;
+
+    private final String reportDirOnRemote;
+
+    ParseReportModelCallable(String tptFileName, String configuration, String jenkinsConfigId,
+                             String reportDirOnRemote) {
+      this.tptFileName = tptFileName;
+      this.configuration = configuration;
+      this.jenkinsConfigId = jenkinsConfigId;
+      this.reportDirOnRemote = reportDirOnRemote;
+    }
+
+    @Override
+    public TPTReportModel invoke(File testDataDir, VirtualChannel channel)
+        throws IOException, InterruptedException {
+      TPTReportModel model = new TPTReportModel(tptFileName, configuration, jenkinsConfigId,
+          testDataDir.getAbsolutePath(), reportDirOnRemote);
+      Collection<FilePath> files = new HashSet<>();
+      Publish.find(new FilePath(testDataDir), "testcase_information.xml", files);
+      try (InputStream inputStream =
+          Files.newInputStream(new File(testDataDir, "test_summary.xml").toPath())) {
+        XmlParsers.parse(inputStream, model.createHandler(!files.isEmpty()));
+      } catch (ParserConfigurationException | SAXException | IOException e) {
+        model.addError(e.getMessage());
+      }
+      return model;
+    }
   }
 
   @Override
@@ -258,6 +340,27 @@ public class TPTReportPublisher extends Recorder implements SimpleBuildStep {
     public String getDisplayName() {
       return "TPT Report";
     }
+
+    /**
+     * @return <code>COPY</code>
+     */
+    public static ReportStorage getDefaultReportStorage() {
+      return ReportStorage.COPY;
+    }
+
+    /**
+     * Fills the report storage selection in the configuration
+     * 
+     * @return items from the combobox list
+     */
+    @SuppressWarnings({ "lgtm[jenkins/csrf]", "lgtm[jenkins/no-permission-check]" })
+    public ListBoxModel doFillReportStorageItems() {
+      ListBoxModel items = new ListBoxModel();
+      for (ReportStorage storage : ReportStorage.values()) {
+        items.add(storage.name());
+      }
+      return items;
+    }
   }
 
   @Override
@@ -58,7 +58,14 @@ class TPTReportSAXHandler extends DefaultHandler {
 
   private String executionConfiguration;
 
-  private boolean isFileCorrupt;
+  private final boolean testcaseInformationFilesExist;
+
+  private boolean testcaseInformationFound = false;
+
+  // test cases that are reported as execution errors if the file turns out to be corrupt
+  private final ArrayList<TPTTestCase> corruptCandidates = new ArrayList<>();
+
+  private int corruptCandidatesIndex = -1;
 
   private TptLogger logger;
 
@@ -74,18 +81,20 @@ class TPTReportSAXHandler extends DefaultHandler {
    *          The report directory. Needed to resolve paths to report files
    * @param executionConfiguration
    *          The name of the execution configuration
-   * @param isFileCorrupt
-   *          if the test_summary.xml is corrupt the test cases were failed very early and we have
-   *          to create the failure manually.
+   * @param testcaseInformationFilesExist
+   *          if there are "testcase_information.xml" files next to the test_summary.xml. If there
+   *          are none and the test_summary.xml does not contain any "TestcaseInformation" tag, the
+   *          file is corrupt: The test cases were failed very early and we have to create the
+   *          failure manually. This is decided at the end of the document.
    */
   public TPTReportSAXHandler(TPTFile tptFile, ArrayList<TPTTestCase> failedTests,
                              String reportDirOnRemote, String executionConfiguration,
-                             boolean isFileCorrupt, TptLogger logger) {
+                             boolean testcaseInformationFilesExist, TptLogger logger) {
     this.reportDir = reportDirOnRemote;
     this.tptFile = tptFile;
     this.failedTests = failedTests;
     this.executionConfiguration = executionConfiguration;
-    this.isFileCorrupt = isFileCorrupt;
+    this.testcaseInformationFilesExist = testcaseInformationFilesExist;
     this.logger = logger;
     nameAndId = new HashMap<>();
   }
@@ -99,10 +108,12 @@ class TPTReportSAXHandler extends DefaultHandler {
       nameAndId.put(id, name);
       // If the file is corrupt, then we are goint to set the test case to Error and add it to the
       // failed tests and fill the other parameters with default values. This is for the publisher.
-      // If the file is corrupt, than we do not have a testsummary tag, so we are filling the things
-      // here.
-      if (isFileCorrupt) {
-        tptFile.addResult(TptResult.EXECUTION_ERROR);
+      // If the file is corrupt, than we do not have a testsummary tag, so we are preparing the
+      // things here and add them at the end of the document.
+      if (!testcaseInformationFilesExist && !testcaseInformationFound) {
+        if (corruptCandidatesIndex < 0) {
+          corruptCandidatesIndex = failedTests.size();
+        }
         TPTTestCase t = new TPTTestCase();
         t.setId(id);
         t.setExecutionDate(new Date().toString());
@@ -113,11 +124,12 @@ class TPTReportSAXHandler extends DefaultHandler {
         t.setExecutionConfiguration(this.executionConfiguration);
         t.setTestCaseName(name);
         t.setJenkinsConfigId(tptFile.getJenkinsConfigId());
-        failedTests.add(t);
+        corruptCandidates.add(t);
       }
     }
     // setFailedTests
     if (TESTCASEINFORMATION.equalsIgnoreCase(qName)) {
+      testcaseInformationFound = true;
       String resultString = attributes.getValue("Result");
       TptResult result = TptResult.fromString(resultString);
       tptFile.addResult(result);
@@ -174,6 +186,20 @@ class TPTReportSAXHandler extends DefaultHandler {
     }
   }
 
+  @Override
+  public void endDocument() throws SAXException {
+    // File is only corrupt, when there arent any testcase_information and it does not contain any
+    // testcaseinformation tag.
+    if (!testcaseInformationFilesExist && !testcaseInformationFound
+        && !corruptCandidates.isEmpty()) {
+      for (int i = 0; i < corruptCandidates.size(); i++) {
+        tptFile.addResult(TptResult.EXECUTION_ERROR);
+      }
+      failedTests.addAll(corruptCandidatesIndex, corruptCandidates);
+    }
+    corruptCandidates.clear();
+  }
+
   /**
    * This method extracts the platform name from the report path. It is assumed, that both input
    * Strings represent absolute paths.
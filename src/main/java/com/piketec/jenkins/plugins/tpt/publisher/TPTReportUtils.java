@@ -19,6 +19,20 @@ public class TPTReportUtils {
     return new File(baseDir, id);
   }
 
+  /**
+   * Get the report archive
+   * 
+   * @param baseDir
+   *          The base directory
+   * @param id
+   *          The unique ID of the configuration to create unique paths
+   * @return the zip file where the report is saved if the report storage is
+   *         {@link ReportStorage#ZIP}
+   */
+  public static File getReportZip(File baseDir, String id) {
+    return new File(baseDir, id + ".zip");
+  }
+
   /**
    * 
    * @param build
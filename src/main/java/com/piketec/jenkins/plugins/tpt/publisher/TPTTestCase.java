@@ -20,17 +20,13 @@
  */
 package com.piketec.jenkins.plugins.tpt.publisher;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
 
 import javax.servlet.ServletException;
 
-import org.apache.commons.io.FileUtils;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
-import hudson.FilePath;
 import hudson.model.DirectoryBrowserSupport;
 import hudson.model.Job;
 
@@ -43,6 +39,8 @@ import hudson.model.Job;
  */
 public class TPTTestCase extends InvisibleActionHostingHtml {
 
+  private static final long serialVersionUID = 1L;
+
   private String result;
 
   private String id;
@@ -228,18 +226,12 @@ public class TPTTestCase extends InvisibleActionHostingHtml {
   public void doIndex(StaplerRequest req, StaplerResponse rsp)
       throws IOException, ServletException {
     getParentPage().getBuild().checkPermission(Job.READ);
-    File pathToHtml = pathToHtml();
-    // TODO: This is approach is not working with parallel access
-    // we simply write a failedTest.html where the page of the right frame is replaced
-    File indexFromFile = new File(pathToHtml, "index.html");
-    String indexFromFileAsString =
-        FileUtils.readFileToString(indexFromFile, Charset.forName("UTF-8"));
-    String failedHtmlAsString = indexFromFileAsString.replace("overview.html", reportFile);
-    File failedHTML = new File(pathToHtml, "failedTest.html");
-    FileUtils.writeStringToFile(failedHTML, failedHtmlAsString, Charset.forName("UTF-8"));
-    DirectoryBrowserSupport dbs = new DirectoryBrowserSupport(this, new FilePath(pathToHtml),
-        "TPT Report", "clipboard.png", false);
-    dbs.setIndexFileName("failedTest.html");
+    // The index with the page of the failed test case in the right frame only exists in memory,
+    // so nothing is written to the report and concurrent viewers do not interfere.
+    DirectoryBrowserSupport dbs = new DirectoryBrowserSupport(this,
+        FailedTestReportRoot.forReportFile(getReportRoot(), reportFile), "TPT Report",
+        "clipboard.png", false);
+    dbs.setIndexFileName(FailedTestReportRoot.INDEX_FILE_NAME);
     dbs.generateResponse(req, rsp, this);
   }
 
@@ -22,27 +22,30 @@ package com.piketec.jenkins.plugins.tpt.publisher;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerProxy;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
 import com.piketec.jenkins.plugins.tpt.Utils;
 
-import hudson.FilePath;
 import hudson.model.Action;
 import hudson.model.DirectoryBrowserSupport;
 import hudson.model.Job;
-import hudson.model.Result;
 import hudson.model.Run;
 import hudson.util.HttpResponses;
+import jenkins.util.SystemProperties;
 
 /**
  * Generates the trend graph on the main page.
@@ -56,12 +59,21 @@ public class TrendGraph implements Action, StaplerProxy {
 
   private static final String LF = "\n";
 
-  private transient Run< ? , ? > lastSuccessBuild;
+  /** The content security policy the DirectoryBrowserSupport uses by default */
+  private static final String DEFAULT_CSP =
+      "sandbox; default-src 'none'; img-src 'self'; style-src 'self';";
+
+  /** The maximal number of points of a trend over a range of days */
+  static final int MAX_TREND_POINTS = 200;
+
+  private static volatile String indexTemplate = null;
 
   private final Job< ? , ? > project;
 
   private ArrayList<Integer> failedBuilds = new ArrayList<>();
 
+  private transient boolean countsInitialized = false;
+
   private int passed;
 
   private int inconclusive;
@@ -70,83 +82,36 @@ public class TrendGraph implements Action, StaplerProxy {
 
   private int failed;
 
-  private ArrayList<ResultData> historyData = new ArrayList<>();
-
   /**
-   * Creates a new TrendGraph
+   * Creates a new TrendGraph. The data is taken from the {@link TrendIndex} of the project when it
+   * is needed, so creating a trend graph for the project page is cheap.
    * 
    * @param project
    *          The Jenkins project this Trendgraph belongs to.
    */
   public TrendGraph(final Job< ? , ? > project) {
     this.project = project;
-    initBuildAndTestCaseResultCounts();
-    setHistoryIterativ();
   }
 
   /**
-   * Gets the last successful build and gets the data (passed, inconclusive, error and failed tests)
-   * from there. We need this method although we have the setHistoryIterativ method because in the
-   * setHistoryIterativ method the call actualBuild.getPreviousBuildsOverThreshold doesnt get the
-   * data from actual build, thats why we have a method for the history and this one for the actual
-   * build.
+   * Gets the data (passed, inconclusive, error and failed tests) of the last successful build from
+   * the trend index.
    */
   private void initBuildAndTestCaseResultCounts() {
-    lastSuccessBuild = project.getLastSuccessfulBuild();
-    if (lastSuccessBuild == null) {
+    if (countsInitialized) {
       return;
     }
-    Action tptAction = lastSuccessBuild.getAction(TPTReportPage.class);
-    if (tptAction == null) {
+    countsInitialized = true;
+    Run< ? , ? > lastSuccessBuild = project.getLastSuccessfulBuild();
+    ResultData newest = TrendIndex.get(project).getNewest();
+    if (lastSuccessBuild == null || newest == null
+        || newest.buildNummer != lastSuccessBuild.getNumber()) {
       return;
     }
-    this.passed = ((TPTReportPage)tptAction).getPassedCount();
-    this.inconclusive = ((TPTReportPage)tptAction).getInconclusiveCount();
-    this.error = ((TPTReportPage)tptAction).getErrorCount();
-    this.failed = ((TPTReportPage)tptAction).getFailedCount();
-  }
-
-  /**
-   * Regenerates the trend graph. It is called everytime the page is refreshed, this is useful
-   * because when a new build is created we want the graph to update on runtime.
-   */
-  private void refreshTrendGraph() {
-    historyData.clear();
-    setHistoryIterativ();
-    initBuildAndTestCaseResultCounts();
-  }
-
-  /**
-   * Fills the history Data with the data from the last 20 builds.
-   */
-  private void setHistoryIterativ() {
-    if (lastSuccessBuild == null) {
-      return;
-    }
-    Result result = lastSuccessBuild.getResult();
-    if (result == null) {
-      return;
-    }
-    @SuppressWarnings("unchecked")
-    List<Run> builds =
-        (List<Run>)lastSuccessBuild.getPreviousBuildsOverThreshold(20, Result.UNSTABLE);
-    if (result.isBetterOrEqualTo(Result.UNSTABLE)) {
-      builds.add(0, lastSuccessBuild);
-    }
-    for (Run run : builds) {
-      ResultData toAdd = new ResultData();
-      TPTReportPage tptAction = run.getAction(TPTReportPage.class); // is always unique
-      if (tptAction == null) {
-        continue;
-      }
-      toAdd.buildNummer = run.getNumber();
-      toAdd.error = tptAction.getErrorCount();
-      toAdd.passed = tptAction.getPassedCount();
-      toAdd.inconclusive = tptAction.getInconclusiveCount();
-      toAdd.failed = tptAction.getFailedCount();
-      toAdd.total = toAdd.error + toAdd.failed + toAdd.passed + toAdd.inconclusive;
-      historyData.add(toAdd);
-    }
+    this.passed = newest.passed;
+    this.inconclusive = newest.inconclusive;
+    this.error = newest.error;
+    this.failed = newest.failed;
   }
 
   @Override
@@ -193,6 +158,7 @@ public class TrendGraph implements Action, StaplerProxy {
    *         belongs to.
    */
   public int getPassed() {
+    initBuildAndTestCaseResultCounts();
     return passed;
   }
 
@@ -205,6 +171,7 @@ public class TrendGraph implements Action, StaplerProxy {
    *          belongs to.
    */
   public void setPassed(int passed) {
+    initBuildAndTestCaseResultCounts();
     this.passed = passed;
   }
 
@@ -213,6 +180,7 @@ public class TrendGraph implements Action, StaplerProxy {
    *         belongs to.
    */
   public int getFailed() {
+    initBuildAndTestCaseResultCounts();
     return failed;
   }
 
@@ -225,6 +193,7 @@ public class TrendGraph implements Action, StaplerProxy {
    *          belongs to.
    */
   public void setFailed(int failed) {
+    initBuildAndTestCaseResultCounts();
     this.failed = failed;
   }
 
@@ -233,6 +202,7 @@ public class TrendGraph implements Action, StaplerProxy {
    *         trend graph belongs to.
    */
   public int getError() {
+    initBuildAndTestCaseResultCounts();
     return error;
   }
 
@@ -245,6 +215,7 @@ public class TrendGraph implements Action, StaplerProxy {
    *          trend graph belongs to.
    */
   public void setError(int error) {
+    initBuildAndTestCaseResultCounts();
     this.error = error;
   }
 
@@ -253,6 +224,7 @@ public class TrendGraph implements Action, StaplerProxy {
    *         graph belongs to.
    */
   public int getInconclusive() {
+    initBuildAndTestCaseResultCounts();
     return inconclusive;
   }
 
@@ -265,6 +237,7 @@ public class TrendGraph implements Action, StaplerProxy {
    *          trend graph belongs to.
    */
   public void setInconclusive(int inconclusive) {
+    initBuildAndTestCaseResultCounts();
     this.inconclusive = inconclusive;
   }
 
@@ -273,9 +246,7 @@ public class TrendGraph implements Action, StaplerProxy {
    *         previous builds.
    */
   public ArrayList<ResultData> getHistoryData() {
-    lastSuccessBuild = project.getLastSuccessfulBuild();
-    refreshTrendGraph();
-    return this.historyData;
+    return new ArrayList<>(TrendIndex.get(project).getHistory());
   }
 
   @Override
@@ -284,9 +255,8 @@ public class TrendGraph implements Action, StaplerProxy {
   }
 
   /**
-   * This method is called everytime the page is refreshed. It regenerates the json file and
-   * refreshes the graph.
-   * 
+   * Serves the trend graph page. The "index.html" is created in memory from the template of the
+   * plugin and the JSON data of the {@link TrendIndex}.
    * 
    * @param req
    *          The request
@@ -296,75 +266,122 @@ public class TrendGraph implements Action, StaplerProxy {
    *           if the response could not be generated
    * @throws ServletException
    *           if the response could not be generated
-   * @throws InterruptedException
-   *           if the job is cancelled
    */
   // lgtm[jenkins/csrf]
   public void doDynamic(StaplerRequest req, StaplerResponse rsp)
-      throws IOException, ServletException, InterruptedException {
+      throws IOException, ServletException {
     project.checkPermission(Job.READ);
-    // For every refresh the actual build will be updated. If actual build equals null, nothing to
-    // show
-    lastSuccessBuild = project.getLastSuccessfulBuild();
-    refreshTrendGraph();
-    if (lastSuccessBuild == null) {
+    String restOfPath = req.getRestOfPath();
+    if (restOfPath.equals("")) {
+      throw HttpResponses.forwardToView(this, "index.jelly");
+    }
+    if (restOfPath.equals("/utils.js")) {
+      rsp.sendRedirect2(req.getContextPath() + "/plugin/piketec-tpt/TrendGraph/utils.js");
       return;
     }
-    generateJson();
-    File buildDir = lastSuccessBuild.getRootDir();
-    DirectoryBrowserSupport dbs = new DirectoryBrowserSupport(this,
-        new FilePath(new File(buildDir.getAbsolutePath() + File.separator + "TrendGraph")),
-        "TPT Report", "/plugin/piketec-tpt/tpt.ico", false);
-
-    if (req.getRestOfPath().equals("")) {
-      throw HttpResponses.forwardToView(this, "index.jelly");
+    if (!restOfPath.equals("/index.html")) {
+      rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
     }
-    dbs.generateResponse(req, rsp, this);
+    TrendIndex index = TrendIndex.get(project);
+    if (isNotModified(req, rsp, index.getETag())) {
+      return;
+    }
+    rsp.setHeader("Content-Security-Policy", SystemProperties.getString(
+        DirectoryBrowserSupport.class.getName() + ".CSP", DEFAULT_CSP));
+    rsp.setContentType("text/html;charset=UTF-8");
+    rsp.getWriter().write(getIndexTemplate().replace("toReplace", index.getJson()));
   }
 
   /**
-   * Generates the json file with the historyData.
+   * Serves the JSON data of the trend graph. Clients get a "304 Not Modified" as long as no build
+   * was added to the trend.
    * 
+   * @param req
+   *          The request
+   * @param rsp
+   *          The response
+   * @param range
+   *          "builds" or empty for the last builds of the {@link TrendIndex}, "&lt;n&gt;d" for all
+   *          builds of the last n days. Wide ranges are reduced to at most
+   *          {@value #MAX_TREND_POINTS} points.
    * @throws IOException
-   *           if files could not be created
-   * @throws InterruptedException
-   *           if the job is cancelled
+   *           if the response could not be generated
    */
-  private void generateJson() throws IOException, InterruptedException {
-    File oldIndexHTML =
-        new File(Utils.getTptPluginRootDir(), "TrendGraph" + File.separator + "index.html");
-    File utilsJs =
-        new File(Utils.getTptPluginRootDir(), "TrendGraph" + File.separator + "utils.js");
-
-    File buildDir = lastSuccessBuild.getRootDir();
-
-    File trendGraph = new File(buildDir.getAbsolutePath() + File.separator + "TrendGraph");
+  // lgtm[jenkins/csrf]
+  public void doTrendJson(StaplerRequest req, StaplerResponse rsp, @QueryParameter String range)
+      throws IOException {
+    project.checkPermission(Job.READ);
+    if (range == null || range.isEmpty() || "builds".equals(range)) {
+      TrendIndex index = TrendIndex.get(project);
+      if (isNotModified(req, rsp, index.getETag())) {
+        return;
+      }
+      rsp.setContentType("application/json;charset=UTF-8");
+      rsp.getWriter().write(index.getJson());
+      return;
+    }
+    int days;
+    try {
+      if (!range.endsWith("d")) {
+        throw new NumberFormatException();
+      }
+      days = Integer.parseInt(range.substring(0, range.length() - 1));
+      if (days < 1) {
+        throw new NumberFormatException();
+      }
+    } catch (NumberFormatException e) {
+      rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown range: " + range);
+      return;
+    }
+    long now = System.currentTimeMillis();
+    // the range moves once per day, even if no build was added
+    String etag = "\"" + TrendSeries.getETag(project) + "-" + days + "-"
+        + TimeUnit.MILLISECONDS.toDays(now) + "\"";
+    if (isNotModified(req, rsp, etag)) {
+      return;
+    }
+    List<ResultData> series = TrendSeries.read(project, now - TimeUnit.DAYS.toMillis(days));
+    ArrayList<ResultData> data =
+        new ArrayList<>(TrendSeries.downsample(series, MAX_TREND_POINTS));
+    Collections.reverse(data);
+    rsp.setContentType("application/json;charset=UTF-8");
+    rsp.getWriter().write(getResultArray(data));
+  }
 
-    if (!trendGraph.isDirectory() && !trendGraph.mkdirs()) {
-      throw new IOException("Could not create directory \"" + trendGraph.getAbsolutePath() + "\"");
+  private static boolean isNotModified(StaplerRequest req, StaplerResponse rsp, String etag) {
+    rsp.setHeader("ETag", etag);
+    rsp.setHeader("Cache-Control", "private, no-cache");
+    if (etag.equals(req.getHeader("If-None-Match"))) {
+      rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return true;
     }
-    if (utilsJs.exists()) {
-      FileUtils.copyFileToDirectory(utilsJs, trendGraph);
-      FileUtils.copyFileToDirectory(oldIndexHTML, trendGraph);
+    return false;
+  }
+
+  /**
+   * @return The "index.html" of the trend graph with the place holder "toReplace" for the JSON
+   *         data. Read only once.
+   */
+  private static String getIndexTemplate() throws IOException {
+    String template = indexTemplate;
+    if (template == null) {
+      File file =
+          new File(Utils.getTptPluginRootDir(), "TrendGraph" + File.separator + "index.html");
+      template = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+      indexTemplate = template;
     }
-    // replace the place holder "toReplace" by actual json script
-    String jsonScript = getResultArray(historyData);
-    String newIndexHTMLWithJson =
-        FileUtils.readFileToString(oldIndexHTML, Charset.forName("UTF-8"));
-    newIndexHTMLWithJson = newIndexHTMLWithJson.replace("toReplace", jsonScript);
-    File newIndexHTML = new File(
-        buildDir.getAbsolutePath() + File.separator + "TrendGraph" + File.separator + "index.html");
-    FileUtils.writeStringToFile(newIndexHTML, newIndexHTMLWithJson, Charset.forName("UTF-8"));
+    return template;
   }
 
   /**
-   * Minor function from generateJson()
+   * Creates the JSON data of the trend graph
    * 
    * @param data
-   *          The data to create the graph from
-   * @return
+   *          The data to create the graph from, the newest build first
+   * @return The JSON data
    */
-  private static String getResultArray(ArrayList<ResultData> data) {
+  static String getResultArray(ArrayList<ResultData> data) {
     StringBuffer buf = new StringBuffer();
     int indent = 1;
     buf.append(StringUtils.repeat(INDENT, indent + 1) + " { \"data\" : [" + LF);
@@ -372,10 +389,12 @@ public class TrendGraph implements Action, StaplerProxy {
       ResultData currentData = data.get(i);
       if (i == data.size() - 1) {
         buf.append(getResultStruct(currentData.total, currentData.failed, currentData.inconclusive,
-            currentData.error, currentData.passed, currentData.buildNummer, indent + 1, false));
+            currentData.error, currentData.passed, currentData.buildNummer, currentData.timestamp,
+            currentData.duration, indent + 1, false));
       } else {
         buf.append(getResultStruct(currentData.total, currentData.failed, currentData.inconclusive,
-            currentData.error, currentData.passed, currentData.buildNummer, indent + 1, true));
+            currentData.error, currentData.passed, currentData.buildNummer, currentData.timestamp,
+            currentData.duration, indent + 1, true));
       }
     }
     buf.append(StringUtils.repeat(INDENT, indent + 1) + "]" + LF);
@@ -384,7 +403,7 @@ public class TrendGraph implements Action, StaplerProxy {
   }
 
   /**
-   * Minor function from generateJson().
+   * Minor function from getResultArray().
    * 
    * @param total
    *          The total number of test cases
@@ -398,6 +417,10 @@ public class TrendGraph implements Action, StaplerProxy {
    *          the number of passed test cases
    * @param buildNummer
    *          the build number of the Jenkins build
+   * @param timestamp
+   *          the start time of the Jenkins build in milliseconds since the epoch
+   * @param duration
+   *          the duration of the Jenkins build in milliseconds
    * @param indent
    *          indentation. Just for formating the json output
    * @param withComma
@@ -406,8 +429,8 @@ public class TrendGraph implements Action, StaplerProxy {
    *         build number
    */
   private static String getResultStruct(int total, int failed, int inconclusive, int error,
-                                        int passed, int buildNummer, int indent,
-                                        boolean withComma) {
+                                        int passed, int buildNummer, long timestamp,
+                                        long duration, int indent, boolean withComma) {
     StringBuffer buf = new StringBuffer();
     buf.append(StringUtils.repeat(INDENT, indent + 1) + "[" + LF);
     buf.append(getJSONIntEntry("buildNummer", buildNummer, indent + 1, true));
@@ -415,7 +438,9 @@ public class TrendGraph implements Action, StaplerProxy {
     buf.append(getJSONIntEntry("failed", failed, indent + 1, true));
     buf.append(getJSONIntEntry("inconclusive", inconclusive, indent + 1, true));
     buf.append(getJSONIntEntry("error", error, indent + 1, true));
-    buf.append(getJSONIntEntry("passed", passed, indent + 1));
+    buf.append(getJSONIntEntry("passed", passed, indent + 1, true));
+    buf.append(getJSONIntEntry("timestamp", timestamp, indent + 1, true));
+    buf.append(getJSONIntEntry("duration", duration, indent + 1));
     // append comma if needed
     if (withComma) {
       buf.append(StringUtils.repeat(INDENT, indent + 1) + "]," + LF);
@@ -425,7 +450,7 @@ public class TrendGraph implements Action, StaplerProxy {
     return buf.toString();
   }
 
-  private static String getJSONIntEntry(String name, int value, int indent, boolean withComma) {
+  private static String getJSONIntEntry(String name, long value, int indent, boolean withComma) {
     if (withComma) {
       return StringUtils.repeat(INDENT, indent + 1) + "{\"" + name + "\" : " + value + "}," + LF;
     } else {
@@ -433,7 +458,7 @@ public class TrendGraph implements Action, StaplerProxy {
     }
   }
 
-  private static String getJSONIntEntry(String name, int value, int indent) {
+  private static String getJSONIntEntry(String name, long value, int indent) {
     return getJSONIntEntry(name, value, indent, false);
   }
 
@@ -476,6 +501,16 @@ public class TrendGraph implements Action, StaplerProxy {
      * The number of the Jenkins build
      */
     public int buildNummer;
+
+    /**
+     * The start time of the Jenkins build in milliseconds since the epoch
+     */
+    public long timestamp;
+
+    /**
+     * The duration of the Jenkins build in milliseconds
+     */
+    public long duration;
   }
 
 }
@@ -0,0 +1,216 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2018 Synopsys Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.piketec.jenkins.plugins.tpt.publisher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import javax.annotation.CheckForNull;
+
+import com.piketec.jenkins.plugins.tpt.publisher.TrendGraph.ResultData;
+
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+/**
+ * The TPT results of the last builds of a job that are shown in the {@link TrendGraph}. The index
+ * is created from the builds once, when the trend of the job is requested the first time. After
+ * that it is updated when a build with a {@link TPTReportPage} is completed, so showing the trend
+ * does not load any builds.
+ */
+public final class TrendIndex {
+
+  /**
+   * The number of builds in the trend: The last successful build and the 20 builds before.
+   */
+  static final int HISTORY_SIZE = 21;
+
+  private static final Map<Job< ? , ? >, TrendIndex> INDEXES =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  /** distinguishes the versions of different Jenkins sessions */
+  private static final String SESSION = Long.toString(System.currentTimeMillis(), 36);
+
+  private final NavigableMap<Integer, ResultData> entries = new TreeMap<>();
+
+  private long version = 0;
+
+  private long lastModified = System.currentTimeMillis();
+
+  private String json = null;
+
+  private TrendIndex() {
+    // NOP
+  }
+
+  /**
+   * @param job
+   *          The Jenkins job
+   * @return The trend index of the job. Created from the builds of the job if it is requested the
+   *         first time.
+   */
+  static TrendIndex get(Job< ? , ? > job) {
+    TrendIndex index = INDEXES.get(job);
+    if (index == null) {
+      index = load(job);
+      TrendIndex existing = INDEXES.putIfAbsent(job, index);
+      if (existing != null) {
+        index = existing;
+      }
+    }
+    return index;
+  }
+
+  private static TrendIndex load(Job< ? , ? > job) {
+    TrendIndex index = new TrendIndex();
+    Run< ? , ? > lastSuccessBuild = job.getLastSuccessfulBuild();
+    if (lastSuccessBuild == null) {
+      return index;
+    }
+    @SuppressWarnings("unchecked")
+    List<Run< ? , ? >> builds = (List<Run< ? , ? >>)lastSuccessBuild
+        .getPreviousBuildsOverThreshold(HISTORY_SIZE - 1, Result.UNSTABLE);
+    builds.add(0, lastSuccessBuild);
+    for (Run< ? , ? > run : builds) {
+      ResultData data = toResultData(run);
+      if (data != null) {
+        index.entries.put(data.buildNummer, data);
+      }
+    }
+    return index;
+  }
+
+  @CheckForNull
+  private static ResultData toResultData(Run< ? , ? > run) {
+    TPTReportPage tptAction = run.getAction(TPTReportPage.class); // is always unique
+    if (tptAction == null) {
+      return null;
+    }
+    ResultData data = new ResultData();
+    data.buildNummer = run.getNumber();
+    data.error = tptAction.getErrorCount();
+    data.passed = tptAction.getPassedCount();
+    data.inconclusive = tptAction.getInconclusiveCount();
+    data.failed = tptAction.getFailedCount();
+    data.total = data.error + data.failed + data.passed + data.inconclusive;
+    data.timestamp = run.getTimeInMillis();
+    data.duration = run.getDuration();
+    return data;
+  }
+
+  private synchronized void add(ResultData data) {
+    entries.put(data.buildNummer, data);
+    while (entries.size() > HISTORY_SIZE) {
+      entries.pollFirstEntry();
+    }
+    changed();
+  }
+
+  private void changed() {
+    version++;
+    lastModified = System.currentTimeMillis();
+    json = null;
+  }
+
+  /**
+   * @return The results of the builds in the trend, the newest build first
+   */
+  synchronized List<ResultData> getHistory() {
+    return new ArrayList<>(entries.descendingMap().values());
+  }
+
+  /**
+   * @return The results of the newest build in the trend or <code>null</code> if there is none
+   */
+  @CheckForNull
+  synchronized ResultData getNewest() {
+    Map.Entry<Integer, ResultData> newest = entries.lastEntry();
+    return newest == null ? null : newest.getValue();
+  }
+
+  /**
+   * @return The history in the JSON format the trend graph page expects. Only created once per
+   *         change of the history.
+   */
+  synchronized String getJson() {
+    if (json == null) {
+      json = TrendGraph.getResultArray(new ArrayList<>(entries.descendingMap().values()));
+    }
+    return json;
+  }
+
+  /**
+   * @return An entity tag that changes whenever the history changes
+   */
+  synchronized String getETag() {
+    return "\"" + SESSION + "-" + System.identityHashCode(this) + "-" + version + "\"";
+  }
+
+  /**
+   * @return The time of the last change of the history
+   */
+  synchronized long getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * Keeps the trend indexes up to date.
+   */
+  @Extension
+  public static final class Listener extends RunListener<Run< ? , ? >> {
+
+    @Override
+    public void onCompleted(Run< ? , ? > run, TaskListener listener) {
+      Result result = run.getResult();
+      if (result == null || !result.isBetterOrEqualTo(Result.UNSTABLE)) {
+        return;
+      }
+      ResultData data = toResultData(run);
+      if (data == null) {
+        return;
+      }
+      TrendSeries.append(run.getParent(), data);
+      // an index that is not loaded yet will contain the build anyway
+      TrendIndex index = INDEXES.get(run.getParent());
+      if (index != null) {
+        index.add(data);
+      }
+    }
+
+    @Override
+    public void onDeleted(Run< ? , ? > run) {
+      if (run.getAction(TPTReportPage.class) != null) {
+        // load again, so an older build fills the gap
+        INDEXES.remove(run.getParent());
+      }
+    }
+  }
+
+}
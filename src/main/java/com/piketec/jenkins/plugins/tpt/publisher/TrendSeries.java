@@ -0,0 +1,216 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2018 Synopsys Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.piketec.jenkins.plugins.tpt.publisher;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.piketec.jenkins.plugins.tpt.publisher.TrendGraph.ResultData;
+
+import hudson.model.Job;
+
+/**
+ * The TPT results of all builds of a job as a compact time series. Every completed build with a
+ * {@link TPTReportPage} appends one line to "piketec-tpt-trend.csv" in the job directory, so long
+ * term trends can be shown without loading the builds. When the file is created, it is started
+ * with the builds of the {@link TrendIndex}.
+ */
+final class TrendSeries {
+
+  private static final Logger LOGGER = Logger.getLogger(TrendSeries.class.getName());
+
+  private static final String FILE_NAME = "piketec-tpt-trend.csv";
+
+  private static final String HEADER =
+      "# build,timestamp,duration,total,passed,inconclusive,error,failed";
+
+  private static final Object LOCK = new Object();
+
+  private TrendSeries() {
+    // NOP
+  }
+
+  private static File getFile(Job< ? , ? > job) {
+    return new File(job.getRootDir(), FILE_NAME);
+  }
+
+  /**
+   * Appends the results of a completed build to the time series of its job.
+   * 
+   * @param job
+   *          The job of the build
+   * @param data
+   *          The results of the build
+   */
+  static void append(Job< ? , ? > job, ResultData data) {
+    File file = getFile(job);
+    synchronized (LOCK) {
+      try {
+        StringBuilder sb = new StringBuilder();
+        if (!file.exists()) {
+          sb.append(HEADER).append('\n');
+          List<ResultData> history = TrendIndex.get(job).getHistory();
+          Collections.reverse(history);
+          for (ResultData previous : history) {
+            if (previous.buildNummer < data.buildNummer) {
+              appendLine(sb, previous);
+            }
+          }
+        }
+        appendLine(sb, data);
+        Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Could not update the TPT trend of " + job.getFullName(), e);
+      }
+    }
+  }
+
+  private static void appendLine(StringBuilder sb, ResultData data) {
+    sb.append(data.buildNummer).append(',').append(data.timestamp).append(',')
+        .append(data.duration).append(',').append(data.total).append(',').append(data.passed)
+        .append(',').append(data.inconclusive).append(',').append(data.error).append(',')
+        .append(data.failed).append('\n');
+  }
+
+  /**
+   * Reads the results of the builds that started at or after the given time.
+   * 
+   * @param job
+   *          The job
+   * @param since
+   *          The start time in milliseconds since the epoch
+   * @return The results, the oldest build first
+   * @throws IOException
+   *           If the time series could not be read
+   */
+  static List<ResultData> read(Job< ? , ? > job, long since) throws IOException {
+    List<ResultData> result = new ArrayList<>();
+    File file = getFile(job);
+    if (!file.exists()) {
+      return result;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        ResultData data = parseLine(line);
+        if (data != null && data.timestamp >= since) {
+          result.add(data);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static ResultData parseLine(String line) {
+    if (line.isEmpty() || line.startsWith("#")) {
+      return null;
+    }
+    String[] values = line.split(",");
+    if (values.length < 8) {
+      return null;
+    }
+    try {
+      ResultData data = new ResultData();
+      data.buildNummer = Integer.parseInt(values[0]);
+      data.timestamp = Long.parseLong(values[1]);
+      data.duration = Long.parseLong(values[2]);
+      data.total = Integer.parseInt(values[3]);
+      data.passed = Integer.parseInt(values[4]);
+      data.inconclusive = Integer.parseInt(values[5]);
+      data.error = Integer.parseInt(values[6]);
+      data.failed = Integer.parseInt(values[7]);
+      return data;
+    } catch (NumberFormatException e) {
+      // NOP, e.g. a line that was only written partially
+      return null;
+    }
+  }
+
+  /**
+   * Reduces the number of points of a time series. The builds are split into at most
+   * <code>maxPoints</code> consecutive groups of the same size and every group is replaced by the
+   * average of its builds. The point is labeled with the last build of the group.
+   * 
+   * @param data
+   *          The results, the oldest build first
+   * @param maxPoints
+   *          The maximal number of points
+   * @return The reduced results, the oldest build first
+   */
+  static List<ResultData> downsample(List<ResultData> data, int maxPoints) {
+    if (data.size() <= maxPoints || maxPoints < 1) {
+      return data;
+    }
+    int groupSize = (data.size() + maxPoints - 1) / maxPoints;
+    List<ResultData> result = new ArrayList<>();
+    for (int start = 0; start < data.size(); start += groupSize) {
+      List<ResultData> group = data.subList(start, Math.min(start + groupSize, data.size()));
+      long total = 0;
+      long passed = 0;
+      long inconclusive = 0;
+      long error = 0;
+      long failed = 0;
+      long duration = 0;
+      for (ResultData d : group) {
+        total += d.total;
+        passed += d.passed;
+        inconclusive += d.inconclusive;
+        error += d.error;
+        failed += d.failed;
+        duration += d.duration;
+      }
+      int n = group.size();
+      ResultData last = group.get(n - 1);
+      ResultData point = new ResultData();
+      point.buildNummer = last.buildNummer;
+      point.timestamp = last.timestamp;
+      point.total = (int)Math.round((double)total / n);
+      point.passed = (int)Math.round((double)passed / n);
+      point.inconclusive = (int)Math.round((double)inconclusive / n);
+      point.error = (int)Math.round((double)error / n);
+      point.failed = (int)Math.round((double)failed / n);
+      point.duration = Math.round((double)duration / n);
+      result.add(point);
+    }
+    return result;
+  }
+
+  /**
+   * @param job
+   *          The job
+   * @return An entity tag that changes whenever a build is appended to the time series
+   */
+  static String getETag(Job< ? , ? > job) {
+    File file = getFile(job);
+    return file.length() + "-" + file.lastModified();
+  }
+
+}
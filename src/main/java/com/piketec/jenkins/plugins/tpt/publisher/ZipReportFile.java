@@ -0,0 +1,140 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2018 Synopsys Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.piketec.jenkins.plugins.tpt.publisher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+import jenkins.util.VirtualFile;
+
+/**
+ * A file or directory in a report archive. Used to serve a report that is stored as
+ * {@link ReportStorage#ZIP} with the {@link hudson.model.DirectoryBrowserSupport} without
+ * extracting it.
+ */
+final class ZipReportFile extends VirtualFile {
+
+  private final File zip;
+
+  private final String path;
+
+  /**
+   * @param zip
+   *          The report archive. The created file is the root directory of the archive.
+   */
+  ZipReportFile(File zip) {
+    this(zip, "");
+  }
+
+  private ZipReportFile(File zip, String path) {
+    this.zip = zip;
+    this.path = path;
+  }
+
+  private ZipReportIndex index() throws IOException {
+    return ZipReportIndex.get(zip);
+  }
+
+  @Override
+  public String getName() {
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
+
+  @Override
+  public URI toURI() {
+    try {
+      return new URI("jar", zip.toURI() + "!/" + path, null);
+    } catch (URISyntaxException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public VirtualFile getParent() {
+    int idx = path.lastIndexOf('/');
+    return new ZipReportFile(zip, idx < 0 ? "" : path.substring(0, idx));
+  }
+
+  @Override
+  public boolean isDirectory() throws IOException {
+    return index().isDirectory(path);
+  }
+
+  @Override
+  public boolean isFile() throws IOException {
+    return index().getEntry(path) != null;
+  }
+
+  @Override
+  public boolean exists() throws IOException {
+    ZipReportIndex index = index();
+    return index.isDirectory(path) || index.getEntry(path) != null;
+  }
+
+  @Override
+  public VirtualFile[] list() throws IOException {
+    List<String> names = index().list(path);
+    VirtualFile[] result = new VirtualFile[names.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = child(names.get(i));
+    }
+    return result;
+  }
+
+  @Override
+  public VirtualFile child(String name) {
+    return new ZipReportFile(zip, ZipReportIndex.normalize(path + "/" + name));
+  }
+
+  @Override
+  public long length() throws IOException {
+    ZipEntry entry = index().getEntry(path);
+    return entry == null ? 0 : entry.getSize();
+  }
+
+  @Override
+  public long lastModified() throws IOException {
+    ZipEntry entry = index().getEntry(path);
+    return entry == null ? zip.lastModified() : entry.getTime();
+  }
+
+  @Override
+  public boolean canRead() throws IOException {
+    return exists();
+  }
+
+  @Override
+  public InputStream open() throws IOException {
+    while (true) {
+      InputStream in = index().open(path);
+      if (in != null) {
+        return in;
+      }
+      // NOP, the index was evicted and closed in the meantime, the next call loads it again
+    }
+  }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2018 Synopsys Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.piketec.jenkins.plugins.tpt.publisher;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.annotation.CheckForNull;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+
+/**
+ * The central directory of a report archive. The indexes of recently viewed reports are cached, so
+ * the archive is not opened and scanned again for every file of the report. An archive that is
+ * evicted from the cache is closed as soon as the last file that is currently served from it is
+ * closed.
+ */
+final class ZipReportIndex {
+
+  private static final LoadingCache<File, ZipReportIndex> CACHE = CacheBuilder.newBuilder()
+      .maximumSize(32).expireAfterAccess(10, TimeUnit.MINUTES)
+      .removalListener((RemovalListener<File, ZipReportIndex>)n -> n.getValue().evict())
+      .build(new CacheLoader<File, ZipReportIndex>() {
+
+        @Override
+        public ZipReportIndex load(File zip) throws IOException {
+          return new ZipReportIndex(zip);
+        }
+      });
+
+  private final ZipFile zipFile;
+
+  private final Map<String, ZipEntry> entries = new HashMap<>();
+
+  private final Set<String> directories = new HashSet<>();
+
+  private int users = 0;
+
+  private boolean evicted = false;
+
+  private boolean closed = false;
+
+  private ZipReportIndex(File zip) throws IOException {
+    zipFile = new ZipFile(zip);
+    directories.add("");
+    Enumeration< ? extends ZipEntry> zipEntries = zipFile.entries();
+    while (zipEntries.hasMoreElements()) {
+      ZipEntry entry = zipEntries.nextElement();
+      String name = normalize(entry.getName());
+      if (entry.isDirectory()) {
+        directories.add(name);
+      } else {
+        entries.put(name, entry);
+      }
+      for (int idx = name.lastIndexOf('/'); idx > 0; idx = name.lastIndexOf('/', idx - 1)) {
+        directories.add(name.substring(0, idx));
+      }
+    }
+  }
+
+  /**
+   * @param zip
+   *          The report archive
+   * @return The index of the archive, from the cache if possible
+   * @throws IOException
+   *           If the archive could not be read
+   */
+  static ZipReportIndex get(File zip) throws IOException {
+    try {
+      return CACHE.get(zip);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof IOException ? (IOException)cause : new IOException(cause);
+    }
+  }
+
+  /**
+   * Drops the cached index, e.g. because the archive was written again.
+   * 
+   * @param zip
+   *          The report archive
+   */
+  static void invalidate(File zip) {
+    CACHE.invalidate(zip);
+  }
+
+  /**
+   * @param path
+   *          A path in the archive, separated by "/"
+   * @return The path without leading, trailing and duplicated separators
+   */
+  static String normalize(String path) {
+    StringBuilder sb = new StringBuilder(path.length());
+    for (String segment : path.replace('\\', '/').split("/")) {
+      if (segment.isEmpty() || ".".equals(segment)) {
+        continue;
+      }
+      if (sb.length() > 0) {
+        sb.append('/');
+      }
+      sb.append(segment);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @param path
+   *          A normalized path in the archive
+   * @return The file entry or <code>null</code> if there is no such file
+   */
+  @CheckForNull
+  ZipEntry getEntry(String path) {
+    return entries.get(path);
+  }
+
+  /**
+   * @param path
+   *          A normalized path in the archive
+   * @return <code>true</code> if the path is a directory in the archive
+   */
+  boolean isDirectory(String path) {
+    return directories.contains(path);
+  }
+
+  /**
+   * @param dir
+   *          A normalized directory path in the archive
+   * @return The names of the files and directories directly in the given directory
+   */
+  List<String> list(String dir) {
+    String prefix = dir.isEmpty() ? "" : dir + "/";
+    List<String> result = new ArrayList<>();
+    for (String name : entries.keySet()) {
+      addChild(result, prefix, name);
+    }
+    for (String name : directories) {
+      addChild(result, prefix, name);
+    }
+    return result;
+  }
+
+  private static void addChild(List<String> result, String prefix, String name) {
+    if (name.length() > prefix.length() && name.startsWith(prefix)
+        && name.indexOf('/', prefix.length()) < 0) {
+      result.add(name.substring(prefix.length()));
+    }
+  }
+
+  /**
+   * Opens a file of the archive. The archive stays open until the returned stream is closed.
+   * 
+   * @param path
+   *          A normalized path in the archive
+   * @return The content of the file or <code>null</code> if this archive was already closed. Get a
+   *         new index in that case.
+   * @throws IOException
+   *           If there is no such file or it could not be read
+   */
+  @CheckForNull
+  InputStream open(String path) throws IOException {
+    ZipEntry entry = entries.get(path);
+    if (entry == null) {
+      throw new FileNotFoundException(path);
+    }
+    synchronized (this) {
+      if (closed) {
+        return null;
+      }
+      users++;
+    }
+    InputStream in;
+    try {
+      in = zipFile.getInputStream(entry);
+    } catch (IOException | RuntimeException e) {
+      release();
+      throw e;
+    }
+    return new FilterInputStream(in) {
+
+      private boolean released = false;
+
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          if (!released) {
+            released = true;
+            release();
+          }
+        }
+      }
+    };
+  }
+
+  private synchronized void release() {
+    users--;
+    closeIfUnused();
+  }
+
+  private synchronized void evict() {
+    evicted = true;
+    closeIfUnused();
+  }
+
+  private void closeIfUnused() {
+    if (evicted && users == 0 && !closed) {
+      closed = true;
+      try {
+        zipFile.close();
+      } catch (IOException e) {
+        // NOP, nothing left to read from it
+      }
+    }
+  }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2018 Synopsys Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.piketec.jenkins.plugins.tpt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the cached log date of {@link Utils#getCurrentDateString()} with the synchronized
+ * {@link SimpleDateFormat} that was used before.
+ */
+class UtilsDateStringTest {
+
+  @Test
+  void formatsLikeSimpleDateFormat() {
+    SimpleDateFormat format = new SimpleDateFormat("dd.MM.yy HH:mm:ss");
+    long start = System.currentTimeMillis();
+    // steps of 250 ms hit the cache and cross second, day and year boundaries
+    for (long millis = start; millis < start + TimeUnit.DAYS.toMillis(400);
+        millis += TimeUnit.HOURS.toMillis(7) + 250) {
+      for (int i = 0; i < 4; i++) {
+        long time = millis + i * 250L;
+        assertEquals(format.format(new Date(time)), Utils.getDateString(time));
+      }
+    }
+    assertEquals(format.format(new Date(0)), Utils.getDateString(0));
+    assertEquals(format.format(new Date(-1)), Utils.getDateString(-1));
+  }
+
+  @Test
+  void currentDateMatchesSimpleDateFormat() {
+    SimpleDateFormat format = new SimpleDateFormat("dd.MM.yy HH:mm:ss");
+    String before = format.format(new Date());
+    String current = Utils.getCurrentDateString();
+    String after = format.format(new Date());
+    if (!current.equals(before)) {
+      assertEquals(after, current);
+    }
+  }
+
+}